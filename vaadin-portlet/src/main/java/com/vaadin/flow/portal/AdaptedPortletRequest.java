@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortletRequest;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Portlet request which gets the original servlet request from a
+ * {@link PortalAdapter}.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+class AdaptedPortletRequest extends VaadinHttpPortletRequest {
+
+    private final PortalAdapter adapter;
+
+    /**
+     * Constructs a new {@link AdaptedPortletRequest}.
+     *
+     * @param request
+     *            {@link PortletRequest} to be wrapped
+     * @param vaadinService
+     *            {@link VaadinPortletService} associated with this request
+     * @param adapter
+     *            the adapter of the portal
+     */
+    AdaptedPortletRequest(PortletRequest request,
+            VaadinPortletService vaadinService, PortalAdapter adapter) {
+        super(request, vaadinService);
+        this.adapter = adapter;
+    }
+
+    @Override
+    protected HttpServletRequest getServletRequest(PortletRequest request) {
+        return adapter.getServletRequest(request);
+    }
+}
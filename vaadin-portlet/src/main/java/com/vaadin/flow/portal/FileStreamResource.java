@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link SeekableStreamResource} whose content is a file.
+ * <p>
+ * Portlets send file resources with positional reads from the file channel,
+ * so byte ranges are served without reading and skipping the content before
+ * them. The content is still copied to the response through a heap buffer,
+ * as the portlet response is only available as an output stream.
+ * <p>
+ * The length of the resource is the length of the file when the resource is
+ * created, so the file should not be modified while the resource is
+ * registered.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class FileStreamResource extends SeekableStreamResource {
+
+    private final File file;
+
+    /**
+     * Creates a new resource for the given file, using the file name as the
+     * resource name.
+     *
+     * @param file
+     *            the file to serve
+     */
+    public FileStreamResource(File file) {
+        this(file.getName(), file);
+    }
+
+    /**
+     * Creates a new resource for the given file.
+     *
+     * @param name
+     *            the resource file name
+     * @param file
+     *            the file to serve
+     */
+    public FileStreamResource(String name, File file) {
+        super(name, file.length(), offset -> Channels
+                .newInputStream(openChannel(file).position(offset)));
+        this.file = file;
+    }
+
+    /**
+     * Gets the file which is the content of this resource.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Opens a read-only channel to the file of this resource.
+     *
+     * @return a new file channel, positioned at the beginning of the file
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    public FileChannel openChannel() throws IOException {
+        return openChannel(file);
+    }
+
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortalContext;
+
+/**
+ * Portal adapter for portals without a dedicated adapter, relying only on the
+ * portlet API.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class GenericPortalAdapter implements PortalAdapter {
+
+    static final GenericPortalAdapter INSTANCE = new GenericPortalAdapter();
+
+    private GenericPortalAdapter() {
+    }
+
+    @Override
+    public boolean supports(PortalContext portalContext) {
+        return true;
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+}
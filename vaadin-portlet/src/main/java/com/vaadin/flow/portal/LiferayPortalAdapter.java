@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortalContext;
+import javax.portlet.PortletRequest;
+import javax.servlet.http.HttpServletRequest;
+
+import java.util.Locale;
+
+/**
+ * Portal adapter for Liferay.
+ * <p>
+ * Requests are wrapped in {@link VaadinLiferayRequest}s which give access to
+ * the original servlet request.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class LiferayPortalAdapter implements PortalAdapter {
+
+    @Override
+    public boolean supports(PortalContext portalContext) {
+        String portalInfo = portalContext.getPortalInfo();
+        return portalInfo != null
+                && portalInfo.toLowerCase(Locale.ROOT).contains("liferay");
+    }
+
+    @Override
+    public VaadinPortletRequest createRequest(PortletRequest request,
+            VaadinPortletService service) {
+        return new VaadinLiferayRequest(request, service);
+    }
+
+    @Override
+    public HttpServletRequest getServletRequest(PortletRequest request) {
+        return VaadinLiferayRequest.getOriginalServletRequest(request);
+    }
+
+    @Override
+    public boolean isResourceUrlTemplateSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean isReloadAfterStateChange() {
+        return false;
+    }
+}
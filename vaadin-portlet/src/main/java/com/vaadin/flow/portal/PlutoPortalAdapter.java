@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortalContext;
+import javax.portlet.PortletRequest;
+import javax.portlet.filter.PortletRequestWrapper;
+import javax.servlet.http.HttpServletRequest;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Locale;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Portal adapter for Apache Pluto.
+ * <p>
+ * Pluto keeps the servlet request of the portal in the request context of
+ * its portlet requests. The context is looked up by method name, once per
+ * request class, so that there is no static dependency on the Pluto
+ * container classes. If the lookup fails, which is logged once per request
+ * class, the requests behave like in any other portal.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class PlutoPortalAdapter implements PortalAdapter {
+
+    private static final ClassValue<MethodHandle> GET_REQUEST_CONTEXT = new AccessorLookup(
+            "getRequestContext");
+    private static final ClassValue<MethodHandle> GET_CONTAINER_REQUEST = new AccessorLookup(
+            "getContainerRequest");
+
+    @Override
+    public boolean supports(PortalContext portalContext) {
+        String portalInfo = portalContext.getPortalInfo();
+        return portalInfo != null
+                && portalInfo.toLowerCase(Locale.ROOT).contains("pluto");
+    }
+
+    @Override
+    public VaadinPortletRequest createRequest(PortletRequest request,
+            VaadinPortletService service) {
+        return new AdaptedPortletRequest(request, service, this);
+    }
+
+    @Override
+    public HttpServletRequest getServletRequest(PortletRequest request) {
+        PortletRequest containerRequest = request;
+        while (containerRequest instanceof PortletRequestWrapper) {
+            containerRequest = ((PortletRequestWrapper) containerRequest)
+                    .getRequest();
+        }
+        Object requestContext = invoke(GET_REQUEST_CONTEXT, containerRequest);
+        Object servletRequest = invoke(GET_CONTAINER_REQUEST, requestContext);
+        return servletRequest instanceof HttpServletRequest
+                ? (HttpServletRequest) servletRequest
+                : null;
+    }
+
+    private static Object invoke(ClassValue<MethodHandle> accessor,
+            Object target) {
+        if (target == null) {
+            return null;
+        }
+        MethodHandle handle = accessor.get(target.getClass());
+        if (handle == null) {
+            return null;
+        }
+        try {
+            return (Object) handle.invokeExact(target);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            LoggerFactory.getLogger(PlutoPortalAdapter.class)
+                    .debug("Pluto request context not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves a public no-argument method by name, typed to take and return
+     * {@code Object}, or {@code null} if the class has no accessible method
+     * of the name. A failed lookup is logged, since it means that the Pluto
+     * version isn't supported.
+     */
+    private static final class AccessorLookup extends ClassValue<MethodHandle> {
+
+        private final String methodName;
+
+        private AccessorLookup(String methodName) {
+            this.methodName = methodName;
+        }
+
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup()
+                        .unreflect(type.getMethod(methodName))
+                        .asType(MethodType.methodType(Object.class,
+                                Object.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LoggerFactory.getLogger(PlutoPortalAdapter.class).warn(
+                        "Cannot access {}() of {}, the servlet request of "
+                                + "the portal is not available",
+                        methodName, type.getName(), e);
+                return null;
+            }
+        }
+    }
+}
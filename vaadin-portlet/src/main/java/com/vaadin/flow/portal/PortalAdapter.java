@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortalContext;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import java.io.Serializable;
+
+import com.vaadin.flow.server.VaadinRequest;
+
+/**
+ * Integration of Vaadin portlets with a specific portal.
+ * <p>
+ * Adapters are discovered with {@link java.util.ServiceLoader} and the first
+ * one which {@link #supports(PortalContext) supports} the portal is used for
+ * all the requests of a {@link VaadinPortletService}. The adapter is resolved
+ * when the service handles its first request, so the portal is not sniffed on
+ * every request. Adapters for Liferay and Apache Pluto are included; a
+ * generic adapter using only the portlet API is used when no other adapter
+ * matches.
+ * <p>
+ * To add an adapter, implement this interface with a public no-argument
+ * constructor and list the implementation in
+ * {@code META-INF/services/com.vaadin.flow.portal.PortalAdapter}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public interface PortalAdapter extends Serializable {
+
+    /**
+     * Checks whether this adapter handles the given portal.
+     *
+     * @param portalContext
+     *            the context of the portal, not {@code null}
+     * @return {@code true} if this adapter should be used for the portal
+     */
+    boolean supports(PortalContext portalContext);
+
+    /**
+     * Wraps a portlet request in a Vaadin portlet request.
+     *
+     * @param request
+     *            the portlet request to wrap
+     * @param service
+     *            the service handling the request
+     * @return the wrapped request
+     */
+    default VaadinPortletRequest createRequest(PortletRequest request,
+            VaadinPortletService service) {
+        return new VaadinPortletRequest(request, service);
+    }
+
+    /**
+     * Wraps a portlet response in a Vaadin portlet response.
+     *
+     * @param response
+     *            the portlet response to wrap
+     * @param service
+     *            the service handling the response
+     * @return the wrapped response
+     */
+    default VaadinPortletResponse createResponse(PortletResponse response,
+            VaadinPortletService service) {
+        return new VaadinPortletResponse(response, service);
+    }
+
+    /**
+     * Gets the original HTTP servlet request of a portlet request.
+     * <p>
+     * Requests created by an adapter which gives access to the servlet
+     * request fall back to its headers, parameters and remote address when
+     * the portlet request doesn't provide them.
+     *
+     * @param request
+     *            the portlet request
+     * @return the servlet request, or {@code null} if it is not accessible
+     *         in this portal
+     */
+    default HttpServletRequest getServletRequest(PortletRequest request) {
+        return null;
+    }
+
+    /**
+     * Checks whether the portal creates resource URLs in a uniform way, so
+     * that the URLs of a response can be derived from a template instead of
+     * being created by the portal one by one.
+     *
+     * @return {@code true} if resource URLs may be derived from a template
+     */
+    default boolean isResourceUrlTemplateSupported() {
+        return false;
+    }
+
+    /**
+     * Checks whether the page needs to be reloaded after the client side
+     * changes the portlet mode or window state.
+     *
+     * @return {@code true} to reload the page after a state change
+     */
+    default boolean isReloadAfterStateChange() {
+        return true;
+    }
+
+    /**
+     * Gets the script which registers the portlet element on the client.
+     * <p>
+     * By default, the registration instruction is sent to the client as is,
+     * but some portals may need to wrap or enhance it with more
+     * instructions.
+     *
+     * @param request
+     *            the render request
+     * @param scriptUrl
+     *            the URL of the web component provider script, or
+     *            {@code null} when the script has been inlined into the
+     *            response
+     * @param registrationInstruction
+     *            the instruction registering the portlet element
+     * @return the script to send to the client
+     */
+    default String getRegistrationScript(VaadinRequest request,
+            String scriptUrl, String registrationInstruction) {
+        return registrationInstruction;
+    }
+}
@@ -12,15 +12,12 @@ import javax.portlet.PortletContext;
 import javax.portlet.PortletResponse;
 import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
-import javax.portlet.ResourceURL;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Collections;
-import java.util.stream.Collectors;
 
 import com.vaadin.flow.function.DeploymentConfiguration;
-import com.vaadin.flow.server.SynchronizedRequestHandler;
+import com.vaadin.flow.server.RequestHandler;
 import com.vaadin.flow.server.VaadinRequest;
 import com.vaadin.flow.server.VaadinResponse;
 import com.vaadin.flow.server.VaadinSession;
@@ -30,52 +27,74 @@ import com.vaadin.pro.licensechecker.LicenseChecker;
 /**
  * Bootstrap handler for portlet bootstrapping.
  * <p>
+ * The render phase only writes the script tags and the portlet element, so
+ * unlike other request handlers this handler does not lock the
+ * {@link VaadinSession}: a page render never waits for a UIDL request which
+ * is holding the lock. See {@link VaadinPortletService#handleRequest}.
+ * <p>
  * For internal use only.
  *
  * @author Vaadin Ltd
  * @since
  */
-class PortletBootstrapHandler extends SynchronizedRequestHandler {
+class PortletBootstrapHandler implements RequestHandler {
 
-    @Override
-    protected boolean canHandleRequest(VaadinRequest request) {
+    /**
+     * Checks whether the request is a render request handled by this
+     * handler.
+     *
+     * @param request
+     *            the request to check
+     * @return {@code true} if the request is a render request
+     */
+    static boolean canHandleRequest(VaadinRequest request) {
         return ((VaadinPortletRequest) request)
                 .getPortletRequest() instanceof RenderRequest;
     }
 
     @Override
-    public boolean synchronizedHandleRequest(VaadinSession session,
-            VaadinRequest request, VaadinResponse response) throws IOException {
+    public boolean handleRequest(VaadinSession session, VaadinRequest request,
+            VaadinResponse response) throws IOException {
+        if (!canHandleRequest(request)) {
+            return false;
+        }
         VaadinPortlet<?> portlet = VaadinPortlet.getCurrent();
-        String tag = portlet.getPortletTag();
+        PortletDescriptor descriptor = portlet.getDescriptor();
+        PortletRenderTemplate template = descriptor.getRenderTemplate();
         PrintWriter writer = response.getWriter();
 
-        PortletResponse resp = ((VaadinPortletResponse) response)
-                .getPortletResponse();
+        VaadinPortletResponse portletResponse =
+                (VaadinPortletResponse) response;
+        PortletResponse resp = portletResponse.getPortletResponse();
+        String namespace = resp.getNamespace();
+        boolean lazy = descriptor.isLazyBootstrap();
+
+        // The element carries the namespace specific bootstrap URL so that
+        // the provider script is the same for all the portlet windows. It has
+        // to be on the page before the provider script runs.
+        template.writeElement(writer, namespace,
+                portlet.getWebComponentBootstrapHandlerURL(portletResponse),
+                lazy);
 
         PortletContext portletContext = portlet.getPortletContext();
         String scriptUrl = (String) portletContext
                 .getAttribute(WebComponentProvider.class.getName());
         if (scriptUrl == null) {
-            RenderResponse renderResponse = (RenderResponse) resp;
-            ResourceURL url = renderResponse.createResourceURL();
-            url.setResourceID("/web-component/" + tag + ".js");
-            scriptUrl = url.toString();
-            portlet.setWebComponentProviderURL(session, resp.getNamespace(),
-                    url.toString());
-
-            url = renderResponse.createResourceURL();
-            url.setResourceID("/web-component/web-component-ui.js");
-            portlet.setWebComponentBootstrapHandlerURL(session,
-                    resp.getNamespace(), url.toString());
-
-            url = renderResponse.createResourceURL();
-            url.setResourceID("/uidl");
-            portlet.setWebComponentUIDLRequestHandlerURL(session,
-                    resp.getNamespace(), url.toString());
+            if (descriptor.isInlineBootstrap() && !lazy) {
+                // Saves the round-trip for loading the provider script: the
+                // web component UI is requested right away. A closing script
+                // tag in the inlined script would end the script element.
+                template.writeInlineScript(writer, descriptor
+                        .getProviderScript().replace("</script", "<\\/script"));
+            } else {
+                scriptUrl = portlet.getWebComponentProviderURL(
+                        ((VaadinPortletRequest) request).getPortletRequest(),
+                        portletResponse);
+            }
+        }
+        if (scriptUrl != null && !lazy) {
+            template.writeScriptTag(writer, scriptUrl);
         }
-        String namespace = resp.getNamespace();
-        writer.write("<script src='" + scriptUrl + "'></script>");
 
         try {
             DeploymentConfiguration config = request.getService()
@@ -89,26 +108,23 @@ class PortletBootstrapHandler extends SynchronizedRequestHandler {
                  VaadinPortletService.getPortletVersion());
             }
 
-            String registrationInstruction = String
-                    .format("window.Vaadin.Flow.Portlets.registerElement('%s','%s','%s','%s','%s');",
-                    tag, namespace,
-                    Collections.list(portlet.getWindowStates("text/html"))
-                            .stream()
-                            .map(state -> "\"" + state.toString() + "\"")
-                            .collect(Collectors.joining(",", "[", "]")),
-                    Collections.list(portlet.getPortletModes("text/html"))
-                            .stream().map(mode -> "\"" + mode.toString() + "\"")
-                            .collect(Collectors.joining(",", "[", "]")),
-                    ((RenderResponse) resp).createActionURL());
             // For liferay send accepted window states, portlet modes and action
             // url to add to client side data.
+            String registrationInstruction = template
+                    .getRegistrationInstruction(namespace,
+                            ((RenderResponse) resp).createActionURL()
+                                    .toString());
 
-            String initScript = portlet.portletElementRegistrationScript(request,
-                    scriptUrl, registrationInstruction);
-
-            writer.printf("<script>%s</script>", initScript);
-            writer.write("<" + tag + " data-portlet-id='" + namespace
-                    + "' style='width: 100%;'></" + tag + ">");
+            if (lazy) {
+                // The provider script is loaded once the element becomes
+                // visible instead of right away
+                registrationInstruction += template
+                        .getLazyLoadInstruction(namespace, scriptUrl);
+                scriptUrl = null;
+            }
+            String initScript = portlet.portletElementRegistrationScript(
+                    request, scriptUrl, registrationInstruction);
+            template.writeInlineScript(writer, initScript);
         } catch (Exception exception) {
             String message = exception.getMessage();
             writer.write("<div style='color:red;'>" + message + "</div>");
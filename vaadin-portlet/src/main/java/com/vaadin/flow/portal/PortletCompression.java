@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+
+/**
+ * Compression settings of the resource responses of a portlet, read once
+ * from the deployment configuration.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletCompression implements Serializable {
+
+    private static final int DEFAULT_THRESHOLD = 1024;
+
+    private final boolean enabled;
+    private final int threshold;
+
+    private PortletCompression(DeploymentConfiguration configuration) {
+        if (configuration == null) {
+            enabled = false;
+            threshold = DEFAULT_THRESHOLD;
+            return;
+        }
+        enabled = configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_COMPRESSION, false);
+        threshold = parseThreshold(configuration.getStringProperty(
+                PortletConstants.PORTLET_PARAMETER_COMPRESSION_THRESHOLD,
+                null));
+    }
+
+    /**
+     * Reads the compression settings from the given configuration.
+     *
+     * @param configuration
+     *            the deployment configuration, or {@code null} to disable
+     *            compression
+     * @return the compression settings
+     */
+    static PortletCompression create(DeploymentConfiguration configuration) {
+        return new PortletCompression(configuration);
+    }
+
+    /**
+     * Checks whether resource responses may be compressed.
+     *
+     * @return {@code true} if compression is enabled
+     * @see PortletConstants#PORTLET_PARAMETER_COMPRESSION
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the minimum size of a response body to compress.
+     *
+     * @return the threshold in bytes
+     * @see PortletConstants#PORTLET_PARAMETER_COMPRESSION_THRESHOLD
+     */
+    int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Checks whether the given {@code Accept-Encoding} header value accepts
+     * gzip encoded responses.
+     *
+     * @param acceptEncoding
+     *            the header value, may be {@code null}
+     * @return {@code true} if gzip is accepted
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if ("gzip".equalsIgnoreCase(name)) {
+                // an explicit gzip entry takes precedence over the wildcard
+                return !hasZeroQuality(parts);
+            }
+            if ("*".equals(name)) {
+                wildcard = !hasZeroQuality(parts);
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static boolean hasZeroQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether content of the given type benefits from compression.
+     *
+     * @param contentType
+     *            the content type, may be {@code null}
+     * @return {@code true} for text based content types
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ENGLISH);
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        return type.startsWith("text/") || type.endsWith("+json")
+                || type.endsWith("+xml") || type.equals("application/json")
+                || type.equals("application/javascript")
+                || type.equals("application/xml");
+    }
+
+    private static int parseThreshold(String value) {
+        if (value != null) {
+            try {
+                return Math.max(0, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                // use the default
+            }
+        }
+        return DEFAULT_THRESHOLD;
+    }
+}
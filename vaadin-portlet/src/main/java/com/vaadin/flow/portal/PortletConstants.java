@@ -23,5 +23,106 @@ public final class PortletConstants {
      */
     public static final String PORTLET_PARAMETER_STATIC_RESOURCES_MAPPING = "portlet.static.resources.mapping";
 
+    /**
+     * Boolean parameter for inlining the web component provider script into
+     * the render response instead of loading it with a separate resource
+     * request.
+     */
+    public static final String PORTLET_PARAMETER_INLINE_BOOTSTRAP = "portlet.inline.bootstrap";
+
+    /**
+     * Boolean parameter for bootstrapping the portlet web component only when
+     * the portlet element becomes visible on the page, e.g. when it is
+     * scrolled into view or the portlet window is restored. Takes precedence
+     * over {@link #PORTLET_PARAMETER_INLINE_BOOTSTRAP}.
+     */
+    public static final String PORTLET_PARAMETER_LAZY_BOOTSTRAP = "portlet.lazy.bootstrap";
+
+    /**
+     * Boolean parameter for streaming multipart uploads directly from the
+     * request input stream to the upload receivers. By default the parts
+     * parsed by the portlet container are used, which many containers buffer
+     * completely before the portlet can read them.
+     */
+    public static final String PORTLET_PARAMETER_STREAMING_UPLOAD = "portlet.upload.streaming";
+
+    /**
+     * Boolean parameter for handing the files of a streamed multipart upload
+     * to their receivers on a shared thread pool, while the request thread
+     * keeps reading the following files to temporary files. Only used
+     * together with {@link #PORTLET_PARAMETER_STREAMING_UPLOAD}.
+     */
+    public static final String PORTLET_PARAMETER_PARALLEL_UPLOAD = "portlet.upload.parallel";
+
+    /**
+     * Integer parameter for the number of threads processing uploaded files
+     * in parallel. Defaults to the number of available processors.
+     */
+    public static final String PORTLET_PARAMETER_PARALLEL_UPLOAD_THREADS = "portlet.upload.parallel.threads";
+
+    /**
+     * Integer parameter for the number of uploaded files of one session which
+     * may be processed in parallel. Further files of the session are
+     * processed on the request thread. Defaults to 2.
+     */
+    public static final String PORTLET_PARAMETER_PARALLEL_UPLOAD_SESSION_LIMIT = "portlet.upload.parallel.sessionLimit";
+
+    /**
+     * Long parameter for the maximum size of an upload request in bytes.
+     * Larger requests are rejected with status 413 before their body is
+     * read. Unlimited by default.
+     */
+    public static final String PORTLET_PARAMETER_UPLOAD_MAX_REQUEST_SIZE = "portlet.upload.maxRequestSize";
+
+    /**
+     * Long parameter for the maximum size of one uploaded file in bytes.
+     * Enforced while a streamed upload is read. Unlimited by default.
+     */
+    public static final String PORTLET_PARAMETER_UPLOAD_MAX_FILE_SIZE = "portlet.upload.maxFileSize";
+
+    /**
+     * Integer parameter for the maximum number of concurrent upload requests
+     * of one portlet session. Further requests are rejected with status 429.
+     * Unlimited by default.
+     */
+    public static final String PORTLET_PARAMETER_UPLOAD_SESSION_LIMIT = "portlet.upload.sessionLimit";
+
+    /**
+     * Integer parameter for the maximum number of concurrent upload requests
+     * of the portlet over all sessions. Further requests are rejected with
+     * status 429. Unlimited by default.
+     */
+    public static final String PORTLET_PARAMETER_UPLOAD_PORTLET_LIMIT = "portlet.upload.portletLimit";
+
+    /**
+     * Boolean parameter for gzip-compressing text based resource responses,
+     * e.g. UIDL responses and scripts, for clients accepting it. Enable it
+     * only if the portal doesn't compress the responses itself.
+     */
+    public static final String PORTLET_PARAMETER_COMPRESSION = "portlet.compression";
+
+    /**
+     * Integer parameter for the minimum size in bytes of a response body to
+     * compress. Defaults to 1024.
+     */
+    public static final String PORTLET_PARAMETER_COMPRESSION_THRESHOLD = "portlet.compression.threshold";
+
+    /**
+     * Integer parameter for the maximum number of view contexts a portlet
+     * keeps in one session, one per browser window and portlet namespace.
+     * When the limit is exceeded, the least recently used view contexts
+     * whose UI is closing are evicted; views that are still shown are kept.
+     * Unlimited by default; view contexts are always evicted when their UI
+     * is detached.
+     */
+    public static final String PORTLET_PARAMETER_VIEW_CONTEXT_LIMIT = "portlet.viewContext.limit";
+
+    /**
+     * Integer parameter for the time in seconds after which a view context
+     * that hasn't been used is evicted from the session, provided that its
+     * UI is closing. Unlimited by default.
+     */
+    public static final String PORTLET_PARAMETER_VIEW_CONTEXT_TTL = "portlet.viewContext.ttl";
+
     private PortletConstants() {}
 }
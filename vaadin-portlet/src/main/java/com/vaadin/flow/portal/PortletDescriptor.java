@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.WebComponentExporterFactory;
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.internal.ReflectTools;
+
+/**
+ * Snapshot of the portlet properties which don't change after the portlet
+ * has been initialized.
+ * <p>
+ * The descriptor is created once in {@link VaadinPortlet#init} so that the
+ * request handlers only read final fields instead of deriving the values on
+ * every request.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletDescriptor implements Serializable {
+
+    private static final String DEFAULT_STATIC_RESOURCES_MAPPING = "/vaadin-portlet-static/";
+
+    private final String tag;
+    private final Class<? extends Component> componentClass;
+    private final List<String> windowStates;
+    private final List<String> portletModes;
+    private final String staticResourcesPath;
+    private final String staticResourcesMappingURI;
+    private final boolean inlineBootstrap;
+    private final boolean lazyBootstrap;
+    private final PortletRenderTemplate renderTemplate;
+    private final String providerScript;
+    private final String providerScriptVersion;
+
+    private PortletDescriptor(VaadinPortlet<?> portlet) {
+        tag = portlet.getPortletTag();
+        componentClass = resolveComponentClass(portlet.getClass());
+        windowStates = toList(portlet.getWindowStates("text/html"));
+        portletModes = toList(portlet.getPortletModes("text/html"));
+        staticResourcesPath = portlet.getStaticResourcesPath();
+
+        VaadinPortletService service = portlet.getService();
+        DeploymentConfiguration configuration = service == null ? null
+                : service.getDeploymentConfiguration();
+        if (configuration == null) {
+            staticResourcesMappingURI = DEFAULT_STATIC_RESOURCES_MAPPING;
+            inlineBootstrap = false;
+            lazyBootstrap = false;
+        } else {
+            staticResourcesMappingURI = getStaticResourcesMappingURI(
+                    configuration);
+            inlineBootstrap = configuration.getBooleanProperty(
+                    PortletConstants.PORTLET_PARAMETER_INLINE_BOOTSTRAP,
+                    false);
+            lazyBootstrap = configuration.getBooleanProperty(
+                    PortletConstants.PORTLET_PARAMETER_LAZY_BOOTSTRAP, false);
+        }
+
+        renderTemplate = new PortletRenderTemplate(tag,
+                portlet.getWindowStates("text/html"),
+                portlet.getPortletModes("text/html"));
+        providerScript = new PortletWebComponentProvider()
+                .getProviderScript(tag);
+        providerScriptVersion = hash(providerScript);
+    }
+
+    /**
+     * Creates the descriptor of the given {@code portlet}.
+     *
+     * @param portlet
+     *            the portlet to describe
+     * @return the portlet descriptor
+     */
+    static PortletDescriptor create(VaadinPortlet<?> portlet) {
+        return new PortletDescriptor(portlet);
+    }
+
+    /**
+     * Gets the tag of the portlet main component.
+     *
+     * @return the tag
+     */
+    String getTag() {
+        return tag;
+    }
+
+    /**
+     * Gets the class of the portlet main component.
+     *
+     * @return the component class
+     */
+    Class<? extends Component> getComponentClass() {
+        return componentClass;
+    }
+
+    /**
+     * Gets the window states supported by the portlet.
+     *
+     * @return an unmodifiable list of window state names
+     */
+    List<String> getWindowStates() {
+        return windowStates;
+    }
+
+    /**
+     * Gets the portlet modes supported by the portlet.
+     *
+     * @return an unmodifiable list of portlet mode names
+     */
+    List<String> getPortletModes() {
+        return portletModes;
+    }
+
+    /**
+     * Gets the path of the portlet static resources, e.g.
+     * {@code PortletMethods.js}.
+     *
+     * @return the static resources path
+     * @see VaadinPortlet#getStaticResourcesPath()
+     */
+    String getStaticResourcesPath() {
+        return staticResourcesPath;
+    }
+
+    /**
+     * Gets the URI which the Vaadin static files are served from, always
+     * starting and ending with a slash.
+     *
+     * @return the static resources mapping URI
+     * @see PortletConstants#PORTLET_PARAMETER_STATIC_RESOURCES_MAPPING
+     */
+    String getStaticResourcesMappingURI() {
+        return staticResourcesMappingURI;
+    }
+
+    /**
+     * Checks whether the web component provider script should be inlined
+     * into the render response.
+     *
+     * @return {@code true} to inline the provider script, {@code false} to
+     *         load it with a separate resource request
+     * @see PortletConstants#PORTLET_PARAMETER_INLINE_BOOTSTRAP
+     */
+    boolean isInlineBootstrap() {
+        return inlineBootstrap;
+    }
+
+    /**
+     * Checks whether the portlet web component should be bootstrapped only
+     * once the portlet element becomes visible on the page.
+     *
+     * @return {@code true} to bootstrap lazily, {@code false} to bootstrap
+     *         right away
+     * @see PortletConstants#PORTLET_PARAMETER_LAZY_BOOTSTRAP
+     */
+    boolean isLazyBootstrap() {
+        return lazyBootstrap;
+    }
+
+    /**
+     * Gets the pre-compiled render fragment template of the portlet.
+     *
+     * @return the render template
+     */
+    PortletRenderTemplate getRenderTemplate() {
+        return renderTemplate;
+    }
+
+    /**
+     * Gets the web component provider script of the portlet.
+     *
+     * @return the provider script
+     * @see PortletWebComponentProvider#getProviderScript(String)
+     */
+    String getProviderScript() {
+        return providerScript;
+    }
+
+    /**
+     * Gets the version of the web component provider script, which changes
+     * whenever the script content changes.
+     *
+     * @return the provider script version
+     */
+    String getProviderScriptVersion() {
+        return providerScriptVersion;
+    }
+
+    /**
+     * Resolves the main component class of the given portlet class.
+     *
+     * @param portletClass
+     *            the portlet class
+     * @return the component class
+     */
+    @SuppressWarnings("unchecked")
+    static Class<? extends Component> resolveComponentClass(
+            Class<?> portletClass) {
+        return (Class<? extends Component>) ReflectTools
+                .getGenericInterfaceType(portletClass,
+                        WebComponentExporterFactory.class);
+    }
+
+    /**
+     * Gets the URI which the Vaadin static files are served from according
+     * to the given configuration, normalized to start and end with a slash.
+     *
+     * @param configuration
+     *            the deployment configuration
+     * @return the static resources mapping URI
+     */
+    static String getStaticResourcesMappingURI(
+            DeploymentConfiguration configuration) {
+        String uri = configuration.getStringProperty(
+                PortletConstants.PORTLET_PARAMETER_STATIC_RESOURCES_MAPPING,
+                DEFAULT_STATIC_RESOURCES_MAPPING);
+        if (uri.isEmpty()) {
+            return "/";
+        }
+        if (uri.charAt(0) == '/' && uri.charAt(uri.length() - 1) == '/') {
+            return uri;
+        }
+        StringBuilder result = new StringBuilder(uri);
+        if (uri.charAt(0) != '/') {
+            result.insert(0, '/');
+        }
+        if (uri.charAt(uri.length() - 1) != '/') {
+            result.append('/');
+        }
+        return result.toString();
+    }
+
+    private static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                        .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static List<String> toList(Enumeration<?> values) {
+        List<String> list = new ArrayList<>();
+        while (values.hasMoreElements()) {
+            list.add(values.nextElement().toString());
+        }
+        return Collections.unmodifiableList(list);
+    }
+}
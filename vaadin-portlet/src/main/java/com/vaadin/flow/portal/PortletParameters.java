@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import org.slf4j.LoggerFactory;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+
+/**
+ * Parsing of the numeric portlet parameters in {@link PortletConstants}.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletParameters {
+
+    private PortletParameters() {
+    }
+
+    /**
+     * Reads a positive integer parameter. Invalid values are logged and
+     * ignored.
+     *
+     * @param configuration
+     *            the deployment configuration
+     * @param name
+     *            the parameter name
+     * @param defaultValue
+     *            the value to use if the parameter is missing or invalid
+     * @return the parameter value, capped at {@link Integer#MAX_VALUE}
+     */
+    static int getPositiveInt(DeploymentConfiguration configuration,
+            String name, int defaultValue) {
+        return (int) Math.min(getPositive(configuration, name, defaultValue),
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a positive long parameter. Invalid values are logged and
+     * ignored.
+     *
+     * @param configuration
+     *            the deployment configuration
+     * @param name
+     *            the parameter name
+     * @param defaultValue
+     *            the value to use if the parameter is missing or invalid
+     * @return the parameter value
+     */
+    static long getPositive(DeploymentConfiguration configuration,
+            String name, long defaultValue) {
+        String value = configuration.getStringProperty(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the warning
+        }
+        LoggerFactory.getLogger(PortletParameters.class).warn(
+                "Ignoring invalid value '{}' of '{}', expected a positive "
+                        + "integer",
+                value, name);
+        return defaultValue;
+    }
+}
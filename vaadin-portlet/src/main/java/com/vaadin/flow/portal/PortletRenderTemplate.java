@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortletMode;
+import javax.portlet.WindowState;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.Enumeration;
+
+/**
+ * Pre-compiled markup of the portlet render fragment.
+ * <p>
+ * Everything in the fragment that only depends on the portlet configuration
+ * (the tag and the supported window states and portlet modes) is computed
+ * once when the portlet is initialized. A render then only fills in the
+ * namespace, the script and bootstrap URLs and the action URL.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletRenderTemplate implements Serializable {
+
+    private static final String REGISTER_ELEMENT = "window.Vaadin.Flow.Portlets.registerElement('";
+    private static final String LOAD_WHEN_VISIBLE = "window.Vaadin.Flow.Portlets.loadWhenVisible('";
+    private static final String SCRIPT_SRC_START = "<script src='";
+    private static final String SCRIPT_SRC_END = "'></script>";
+    private static final String SCRIPT_START = "<script>";
+    private static final String SCRIPT_END = "</script>";
+
+    private final String tag;
+
+    // window.Vaadin.Flow.Portlets.registerElement('<tag>','
+    private final String registrationPrefix;
+    // ','<window states>','<portlet modes>','
+    private final String registrationInfix;
+    // <tag data-portlet-id='
+    private final String elementPrefix;
+    // ' style='width: 100%;'></tag>
+    private final String elementSuffix;
+    // ' data-bootstrap-lazy style='width: 100%;'></tag>
+    private final String lazyElementSuffix;
+    // runs the provider script bootstrap function of the tag, if loaded
+    private final String bootstrapInstruction;
+
+    /**
+     * Creates a new template for the given tag, window states and portlet
+     * modes.
+     *
+     * @param tag
+     *            the tag of the portlet main component
+     * @param windowStates
+     *            the window states supported by the portlet
+     * @param portletModes
+     *            the portlet modes supported by the portlet
+     */
+    PortletRenderTemplate(String tag, Enumeration<WindowState> windowStates,
+            Enumeration<PortletMode> portletModes) {
+        this.tag = tag;
+        registrationPrefix = REGISTER_ELEMENT + tag + "','";
+        registrationInfix = "','" + toJsonArray(windowStates) + "','"
+                + toJsonArray(portletModes) + "','";
+        elementPrefix = "<" + tag + " data-portlet-id='";
+        elementSuffix = "' style='width: 100%;'></" + tag + ">";
+        lazyElementSuffix = "' data-bootstrap-lazy" + elementSuffix.substring(1);
+        bootstrapInstruction = "var bootstrap="
+                + "window.Vaadin.Flow.portletBootstrap;if(bootstrap&&bootstrap['"
+                + tag + "']){bootstrap['" + tag + "']();}";
+    }
+
+    /**
+     * Gets the tag of the portlet main component.
+     *
+     * @return the tag
+     */
+    String getTag() {
+        return tag;
+    }
+
+    /**
+     * Gets the client side instruction which registers the portlet element.
+     *
+     * @param namespace
+     *            the portlet namespace
+     * @param actionUrl
+     *            the portlet action URL
+     * @return the registration instruction
+     */
+    String getRegistrationInstruction(String namespace, String actionUrl) {
+        return new StringBuilder(registrationPrefix.length()
+                + registrationInfix.length() + namespace.length()
+                + actionUrl.length() + 3).append(registrationPrefix)
+                        .append(namespace).append(registrationInfix)
+                        .append(actionUrl).append("');").toString();
+    }
+
+    /**
+     * Gets the client side instruction which loads the given {@code scriptUrl}
+     * once the portlet element becomes visible.
+     *
+     * @param namespace
+     *            the portlet namespace
+     * @param scriptUrl
+     *            the URL of the web component provider script
+     * @return the lazy load instruction
+     */
+    String getLazyLoadInstruction(String namespace, String scriptUrl) {
+        return new StringBuilder(LOAD_WHEN_VISIBLE.length()
+                + namespace.length() + scriptUrl.length() + 6)
+                        .append(LOAD_WHEN_VISIBLE).append(namespace)
+                        .append("','").append(scriptUrl).append("');")
+                        .toString();
+    }
+
+    /**
+     * Writes a script tag which loads the given {@code scriptUrl}.
+     *
+     * @param writer
+     *            the writer to write the tag to
+     * @param scriptUrl
+     *            the URL of the script
+     */
+    void writeScriptTag(PrintWriter writer, String scriptUrl) {
+        writer.write(SCRIPT_SRC_START);
+        writer.write(scriptUrl);
+        writer.write(SCRIPT_SRC_END);
+    }
+
+    /**
+     * Writes an inline script tag with the given {@code script} content.
+     *
+     * @param writer
+     *            the writer to write the tag to
+     * @param script
+     *            the script content
+     */
+    void writeInlineScript(PrintWriter writer, String script) {
+        writer.write(SCRIPT_START);
+        writer.write(script);
+        writer.write(SCRIPT_END);
+    }
+
+    /**
+     * Gets the client side instruction which bootstraps the portlet elements
+     * of the page which have not been bootstrapped yet, provided that the web
+     * component provider script has been loaded.
+     *
+     * @return the bootstrap instruction
+     */
+    String getBootstrapInstruction() {
+        return bootstrapInstruction;
+    }
+
+    /**
+     * Writes the portlet main component element for the given
+     * {@code namespace}.
+     *
+     * @param writer
+     *            the writer to write the element to
+     * @param namespace
+     *            the portlet namespace
+     * @param bootstrapUrl
+     *            the URL of the web component bootstrap handler of the
+     *            portlet window, read by the web component provider script
+     * @param lazy
+     *            {@code true} if the provider script should leave the element
+     *            alone until it becomes visible
+     */
+    void writeElement(PrintWriter writer, String namespace,
+            String bootstrapUrl, boolean lazy) {
+        writer.write(elementPrefix);
+        writer.write(namespace);
+        writer.write("' data-bootstrap-url='");
+        writer.write(bootstrapUrl);
+        writer.write(lazy ? lazyElementSuffix : elementSuffix);
+    }
+
+    private static String toJsonArray(Enumeration<?> values) {
+        StringBuilder builder = new StringBuilder("[");
+        while (values.hasMoreElements()) {
+            builder.append('"').append(values.nextElement()).append('"');
+            if (values.hasMoreElements()) {
+                builder.append(',');
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -10,19 +10,47 @@ package com.vaadin.flow.portal;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.portlet.ClientDataRequest;
 import javax.portlet.PortletRequest;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
 import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.RequestContext;
 import org.apache.commons.fileupload.portlet.PortletFileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.vaadin.flow.internal.CurrentInstance;
+import com.vaadin.flow.internal.StateNode;
+import com.vaadin.flow.server.StreamReceiver;
 import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinResponse;
+import com.vaadin.flow.server.VaadinSession;
 import com.vaadin.flow.server.communication.StreamReceiverHandler;
 
 /**
@@ -37,6 +65,87 @@ import com.vaadin.flow.server.communication.StreamReceiverHandler;
  */
 class PortletStreamReceiverHandler extends StreamReceiverHandler {
 
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final PortletUploadConfiguration configuration;
+
+    private final Semaphore portletUploads;
+
+    // created when first needed, also after deserialization, and published
+    // only once its limits have been set
+    private transient volatile PortletFileUpload upload;
+
+    private transient ExecutorService executor;
+
+    private transient boolean shutdown;
+
+    /**
+     * Creates a handler which uses the parts parsed by the portlet
+     * container.
+     */
+    PortletStreamReceiverHandler() {
+        this(PortletUploadConfiguration.create(null));
+    }
+
+    /**
+     * Creates a handler with the given upload settings.
+     *
+     * @param configuration
+     *            the upload configuration
+     */
+    PortletStreamReceiverHandler(PortletUploadConfiguration configuration) {
+        this.configuration = configuration;
+        int portletLimit = configuration.getPortletLimit();
+        portletUploads = portletLimit > 0 ? new Semaphore(portletLimit)
+                : null;
+    }
+
+    @Override
+    public void handleRequest(VaadinSession session, VaadinRequest request,
+            VaadinResponse response, StreamReceiver streamReceiver,
+            String uiId, String securityKey) throws IOException {
+        // The limits are checked before reading the body so that rejected
+        // uploads don't occupy the request thread or the disk. The receiver
+        // stays registered, so the client may retry.
+        long maxRequestSize = configuration.getMaxRequestSize();
+        if (maxRequestSize >= 0 && getRequestSize(request) > maxRequestSize) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Upload exceeds the maximum size of " + maxRequestSize
+                            + " bytes");
+            return;
+        }
+        int sessionLimit = configuration.getSessionLimit();
+        Semaphore sessionUploads = sessionLimit > 0
+                ? getSessionLimits(session).getUploads(sessionLimit)
+                : null;
+        if (sessionUploads != null && !sessionUploads.tryAcquire()) {
+            response.sendError(SC_TOO_MANY_REQUESTS,
+                    "Too many concurrent uploads in the session");
+            return;
+        }
+        try {
+            if (portletUploads != null && !portletUploads.tryAcquire()) {
+                response.sendError(SC_TOO_MANY_REQUESTS,
+                        "Too many concurrent uploads");
+                return;
+            }
+            try {
+                super.handleRequest(session, request, response,
+                        streamReceiver, uiId, securityKey);
+            } finally {
+                if (portletUploads != null) {
+                    portletUploads.release();
+                }
+            }
+        } finally {
+            if (sessionUploads != null) {
+                sessionUploads.release();
+            }
+        }
+    }
+
     @Override
     protected boolean isMultipartUpload(VaadinRequest request) {
         return request instanceof VaadinPortletRequest &&
@@ -46,15 +155,225 @@ class PortletStreamReceiverHandler extends StreamReceiverHandler {
     @Override
     protected Collection<Part> getParts(VaadinRequest request)
             throws Exception {
+        if (configuration.isStreaming()) {
+            // Without parts the upload is read with getItemIterator, which
+            // copies each file from the request input stream to the
+            // receiver as it arrives
+            return Collections.emptyList();
+        }
         PortletRequest portletRequest = getPortletRequest(request);
         return ((ClientDataRequest) portletRequest).getParts();
     }
 
+    @Override
+    protected void doHandleMultipartFileUpload(VaadinSession session,
+            VaadinRequest request, VaadinResponse response,
+            StreamReceiver streamReceiver, StateNode owner)
+            throws IOException {
+        if (!configuration.isParallel()) {
+            super.doHandleMultipartFileUpload(session, request, response,
+                    streamReceiver, owner);
+            return;
+        }
+        boolean success;
+        try {
+            success = handleFilesInParallel(session, request, streamReceiver,
+                    owner);
+        } catch (Exception exception) {
+            getLogger().warn("File upload failed.", exception);
+            success = false;
+        }
+        sendUploadResponse(response, success);
+    }
+
+    /**
+     * Reads the files of the upload to temporary files on the request thread
+     * and hands each one to the receiver on the executor, so that the
+     * receiver processes a file while the following ones are still being
+     * read. Files exceeding the limit of the session are handed to the
+     * receiver directly on the request thread.
+     */
+    private boolean handleFilesInParallel(VaadinSession session,
+            VaadinRequest request, StreamReceiver streamReceiver,
+            StateNode owner) throws IOException, FileUploadException {
+        Semaphore permits = getSessionLimits(session)
+                .getParallelFiles(configuration.getParallelSessionLimit());
+        Map<Class<?>, CurrentInstance> instances = CurrentInstance
+                .getInstances();
+        List<Future<Boolean>> results = new ArrayList<>();
+        boolean success = true;
+        try {
+            FileItemIterator iterator = getItemIterator(request);
+            while (iterator.hasNext()) {
+                FileItemStream item = iterator.next();
+                if (item.isFormField()) {
+                    continue;
+                }
+                if (!permits.tryAcquire()) {
+                    try (InputStream stream = item.openStream()) {
+                        success &= handleFileUploadValidationAndData(session,
+                                stream, streamReceiver, item.getName(),
+                                item.getContentType(),
+                                request.getContentLength(), owner);
+                    }
+                    continue;
+                }
+                Path file;
+                try {
+                    file = spill(item);
+                } catch (IOException exception) {
+                    permits.release();
+                    throw exception;
+                }
+                Callable<Boolean> task = () -> {
+                    Map<Class<?>, CurrentInstance> old = CurrentInstance
+                            .restoreInstances(instances);
+                    try (InputStream stream = Files.newInputStream(file)) {
+                        return handleFileUploadValidationAndData(session,
+                                stream, streamReceiver, item.getName(),
+                                item.getContentType(), Files.size(file),
+                                owner);
+                    } finally {
+                        Files.deleteIfExists(file);
+                        permits.release();
+                        CurrentInstance.restoreInstances(old);
+                    }
+                };
+                try {
+                    results.add(getExecutor().submit(task));
+                } catch (RejectedExecutionException exception) {
+                    // the service is being destroyed, so the file is
+                    // processed on the request thread
+                    FutureTask<Boolean> result = new FutureTask<>(task);
+                    result.run();
+                    results.add(result);
+                }
+            }
+        } finally {
+            for (Future<Boolean> result : results) {
+                success &= getResult(result);
+            }
+        }
+        return success;
+    }
+
+    private static Path spill(FileItemStream item) throws IOException {
+        Path file = Files.createTempFile("vaadin-upload-", ".tmp");
+        try (InputStream stream = item.openStream()) {
+            Files.copy(stream, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            Files.deleteIfExists(file);
+            throw exception;
+        }
+        return file;
+    }
+
+    private static boolean getResult(Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException exception) {
+            getLogger().warn("File upload failed.", exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Gets the upload limiters of the given session.
+     *
+     * @param session
+     *            the Vaadin session
+     * @return the upload limiters of the session
+     */
+    static SessionUploadLimits getSessionLimits(VaadinSession session) {
+        session.lock();
+        try {
+            SessionUploadLimits limits = session
+                    .getAttribute(SessionUploadLimits.class);
+            if (limits == null) {
+                limits = new SessionUploadLimits();
+                session.setAttribute(SessionUploadLimits.class, limits);
+            }
+            return limits;
+        } finally {
+            session.unlock();
+        }
+    }
+
+    private static long getRequestSize(VaadinRequest request) {
+        if (request instanceof VaadinPortletRequest
+                && ((VaadinPortletRequest) request).isClientDataRequest()) {
+            return ((VaadinPortletRequest) request).getContentLengthLong();
+        }
+        return request.getContentLength();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (shutdown) {
+            throw new RejectedExecutionException(
+                    "Upload processing has been shut down");
+        }
+        if (executor == null) {
+            int threads = configuration.getParallelThreads();
+            // When the pool and its queue are full the request thread
+            // processes the file itself, which also throttles the reading
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 4),
+                    runnable -> {
+                        Thread thread = new Thread(runnable,
+                                "vaadin-portlet-upload-"
+                                        + THREAD_COUNTER.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, PortletStreamReceiverHandler::runInCaller);
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    // Unlike CallerRunsPolicy, which silently discards the task once the
+    // pool is shut down and leaves its future incomplete, a task rejected by
+    // a shut down pool fails so that the caller can run it itself
+    private static void runInCaller(Runnable task,
+            ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException(
+                    "Upload processing has been shut down");
+        }
+        task.run();
+    }
+
+    /**
+     * Stops the threads processing uploaded files in parallel. Files of
+     * uploads still in progress are processed on their request threads.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
     @Override
     protected FileItemIterator getItemIterator(VaadinRequest request)
             throws FileUploadException, IOException {
-        PortletFileUpload upload = new PortletFileUpload();
-        return upload.getItemIterator(getRequestContext(request));
+        return getUpload().getItemIterator(getRequestContext(request));
+    }
+
+    private PortletFileUpload getUpload() {
+        PortletFileUpload fileUpload = upload;
+        if (fileUpload == null) {
+            // the upload has no per-request state, so one instance is shared;
+            // creating it twice in a race is harmless
+            fileUpload = new PortletFileUpload();
+            fileUpload.setSizeMax(configuration.getMaxRequestSize());
+            fileUpload.setFileSizeMax(configuration.getMaxFileSize());
+            upload = fileUpload;
+        }
+        return fileUpload;
     }
 
     private PortletRequest getPortletRequest(VaadinRequest request) {
@@ -65,6 +384,53 @@ class PortletStreamReceiverHandler extends StreamReceiverHandler {
         return new StreamRequestContext(request);
     }
 
+    private static Logger getLogger() {
+        return LoggerFactory
+                .getLogger(PortletStreamReceiverHandler.class.getName());
+    }
+
+    /**
+     * Limiters of the uploads of a session.
+     * <p>
+     * The semaphores are not serialized with the session: a session which is
+     * passivated or replicated during an upload would otherwise come back
+     * with permits that are never released. A restored session starts with
+     * all the permits available.
+     */
+    static final class SessionUploadLimits implements Serializable {
+        private transient Semaphore uploads;
+        private transient Semaphore parallelFiles;
+
+        /**
+         * Gets the limiter of the concurrent uploads of the session.
+         *
+         * @param limit
+         *            the number of permits, used when the limiter is created
+         * @return the limiter
+         */
+        synchronized Semaphore getUploads(int limit) {
+            if (uploads == null) {
+                uploads = new Semaphore(limit);
+            }
+            return uploads;
+        }
+
+        /**
+         * Gets the limiter of the files of the session processed in
+         * parallel.
+         *
+         * @param limit
+         *            the number of permits, used when the limiter is created
+         * @return the limiter
+         */
+        synchronized Semaphore getParallelFiles(int limit) {
+            if (parallelFiles == null) {
+                parallelFiles = new Semaphore(limit);
+            }
+            return parallelFiles;
+        }
+    }
+
     private static class StreamRequestContext implements RequestContext {
         private final VaadinRequest request;
 
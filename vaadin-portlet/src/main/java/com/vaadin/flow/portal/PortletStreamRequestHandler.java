@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import com.vaadin.flow.server.AbstractStreamResource;
 import com.vaadin.flow.server.StreamReceiver;
 import com.vaadin.flow.server.StreamResource;
+import com.vaadin.flow.server.StreamResourceRegistry;
 import com.vaadin.flow.server.VaadinRequest;
 import com.vaadin.flow.server.VaadinResponse;
 import com.vaadin.flow.server.VaadinSession;
@@ -72,6 +73,57 @@ class PortletStreamRequestHandler extends StreamRequestHandler {
             return false;
         }
 
+        Optional<AbstractStreamResource> abstractStreamResource = findResource(
+                session, pathInfo);
+        if (!abstractStreamResource.isPresent()) {
+            abstractStreamResource = findResourceLocked(session, request,
+                    response, pathInfo);
+            if (!abstractStreamResource.isPresent()) {
+                return true;
+            }
+        }
+
+        AbstractStreamResource resource = abstractStreamResource.get();
+        if (resource instanceof StreamResource) {
+            resourceHandler.handleRequest(session, request, response,
+                    (StreamResource) resource);
+        } else if (resource instanceof StreamReceiver) {
+            StreamReceiver streamReceiver = (StreamReceiver) resource;
+            String[] parts = parsePortletPath(pathInfo);
+
+            receiverHandler.handleRequest(session, request, response,
+                    streamReceiver, parts[0], parts[1]);
+        } else {
+            getLogger().warn("Received unknown stream resource.");
+        }
+        return true;
+    }
+
+    /**
+     * Looks the resource up from the concurrent index of the portlet
+     * resource registry, without locking the session.
+     */
+    private Optional<AbstractStreamResource> findResource(
+            VaadinSession session, String pathInfo) {
+        StreamResourceRegistry registry = session.getResourceRegistry();
+        if (!(registry instanceof PortletStreamResourceRegistry)) {
+            return Optional.empty();
+        }
+        String[] parts = parsePortletPath(pathInfo);
+        if (parts.length != 3) {
+            return Optional.empty();
+        }
+        try {
+            return ((PortletStreamResourceRegistry) registry).findResource(
+                    Integer.parseInt(parts[0]), parts[1], parts[2]);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<AbstractStreamResource> findResourceLocked(
+            VaadinSession session, VaadinRequest request,
+            VaadinResponse response, String pathInfo) throws IOException {
         Optional<AbstractStreamResource> abstractStreamResource;
         session.lock();
         try {
@@ -81,28 +133,11 @@ class PortletStreamRequestHandler extends StreamRequestHandler {
             if (!abstractStreamResource.isPresent()) {
                 response.sendError(HttpServletResponse.SC_NOT_FOUND,
                         "Resource is not found for path=" + pathInfo);
-                return true;
             }
         } finally {
             session.unlock();
         }
-
-        if (abstractStreamResource.isPresent()) {
-            AbstractStreamResource resource = abstractStreamResource.get();
-            if (resource instanceof StreamResource) {
-                resourceHandler.handleRequest(session, request, response,
-                        (StreamResource) resource);
-            } else if (resource instanceof StreamReceiver) {
-                StreamReceiver streamReceiver = (StreamReceiver) resource;
-                String[] parts = parsePortletPath(pathInfo);
-
-                receiverHandler.handleRequest(session, request, response,
-                        streamReceiver, parts[0], parts[1]);
-            } else {
-                getLogger().warn("Received unknown stream resource.");
-            }
-        }
-        return true;
+        return abstractStreamResource;
     }
 
     /**
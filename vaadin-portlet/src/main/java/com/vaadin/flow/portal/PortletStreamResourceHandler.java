@@ -11,9 +11,25 @@ package com.vaadin.flow.portal;
 import javax.portlet.PortletContext;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
 
 import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.StreamResourceWriter;
@@ -24,16 +40,68 @@ import com.vaadin.flow.server.communication.StreamResourceHandler;
 
 public class PortletStreamResourceHandler extends StreamResourceHandler {
 
+    private static final int MAX_RANGES = 16;
+
+    private static final int MAX_PRECOMPRESSED_SIZE = 256 * 1024;
+
+    private static final int MAX_PRECOMPRESSED_BYTES = 4 * 1024 * 1024;
+
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_POOLED_TRANSFER_BUFFERS = 8;
+
+    // Copy buffers of the resource bodies, reused across the requests
+    private static final BlockingQueue<byte[]> TRANSFER_BUFFERS = new ArrayBlockingQueue<>(
+            MAX_POOLED_TRANSFER_BUFFERS);
+
+    private final Map<String, String> mimeTypes = new ConcurrentHashMap<>();
+
+    // Compressed content of resources with a strong ETag, which identifies
+    // the content, in access order and bounded by the total size
+    private final LinkedHashMap<String, byte[]> precompressed = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    private long precompressedBytes;
+
     @Override
     public void handleRequest(VaadinSession session, VaadinRequest request,
             VaadinResponse response, StreamResource streamResource)
             throws IOException {
         StreamResourceWriter writer;
+        List<long[]> ranges = null;
+        String contentType;
+        String precompressedKey = null;
         session.lock();
         try {
-            setResponseContentType(request, response, streamResource);
+            Map<String, String> headers = streamResource.getHeaders();
+            if (isNotModified(request, headers)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                response.setCacheTime(streamResource.getCacheTime());
+                headers.forEach(response::setHeader);
+                return;
+            }
+            contentType = resolveContentType(request, streamResource);
+            response.setContentType(contentType);
             response.setCacheTime(streamResource.getCacheTime());
-            streamResource.getHeaders().forEach(response::setHeader);
+            headers.forEach(response::setHeader);
+            if (streamResource instanceof SeekableStreamResource) {
+                long length = ((SeekableStreamResource) streamResource)
+                        .getLength();
+                response.setHeader("Accept-Ranges", "bytes");
+                ranges = getRequestedRanges(request, headers, length);
+                if (ranges != null && ranges.isEmpty()) {
+                    response.setStatus(
+                            HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    return;
+                }
+                if (ranges == null && length <= Integer.MAX_VALUE) {
+                    response.setContentLength((int) length);
+                }
+            } else {
+                precompressedKey = getPrecompressedKey(response,
+                        streamResource, headers, contentType);
+            }
             writer = streamResource.getWriter();
             if (writer == null) {
                 throw new IOException(
@@ -52,8 +120,27 @@ public class PortletStreamResourceHandler extends StreamResourceHandler {
         // effect being called after closing the stream (see #8740).
         OutputStream outputStream = null;
         try {
-            outputStream = response.getOutputStream();
-            writer.accept(outputStream, session);
+            if (ranges != null) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                outputStream = response.getOutputStream();
+                writeRanges(session, response, outputStream,
+                        (SeekableStreamResource) streamResource, ranges,
+                        contentType);
+            } else if (streamResource instanceof FileStreamResource) {
+                outputStream = response.getOutputStream();
+                FileStreamResource fileResource = (FileStreamResource) streamResource;
+                try (FileChannel channel = fileResource.openChannel()) {
+                    transfer(channel, 0, fileResource.getLength(),
+                            outputStream);
+                }
+            } else if (precompressedKey != null) {
+                outputStream = response.getOutputStream();
+                writeCompressed(session, (VaadinPortletResponse) response,
+                        outputStream, writer, precompressedKey);
+            } else {
+                outputStream = response.getOutputStream();
+                writer.accept(outputStream, session);
+            }
         } catch (Exception exception) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             throw exception;
@@ -64,17 +151,483 @@ public class PortletStreamResourceHandler extends StreamResourceHandler {
         }
     }
 
-    private void setResponseContentType(VaadinRequest request,
-            VaadinResponse response, StreamResource streamResource) {
-        PortletContext context = ((VaadinPortletRequest) request)
-                .getPortletContext();
+    private String getPrecompressedKey(VaadinResponse response,
+            StreamResource streamResource, Map<String, String> headers,
+            String contentType) {
+        String etag = getHeader(headers, "ETag");
+        if (etag == null || etag.startsWith("W/")
+                || !(response instanceof VaadinPortletResponse)
+                || !((VaadinPortletResponse) response).isCompressionAccepted()
+                || !PortletCompression.isCompressible(contentType)) {
+            return null;
+        }
+        // the id keeps the content of one session from being served to
+        // another session using the same ETag
+        return streamResource.getId() + '|' + etag;
+    }
+
+    private void writeCompressed(VaadinSession session,
+            VaadinPortletResponse response, OutputStream outputStream,
+            StreamResourceWriter writer, String key) throws IOException {
+        byte[] compressed;
+        synchronized (precompressed) {
+            compressed = precompressed.get(key);
+        }
+        if (compressed != null) {
+            // the response doesn't compress the body again once it is
+            // marked as encoded
+            response.setGzipEncoded();
+            response.setContentLength(compressed.length);
+            outputStream.write(compressed);
+            return;
+        }
+        PrecompressingOutputStream stream = new PrecompressingOutputStream(
+                response, outputStream, response.getCompressionThreshold());
+        writer.accept(stream, session);
+        stream.finish();
+        compressed = stream.getCompressed();
+        if (compressed != null) {
+            cachePrecompressed(key, compressed);
+        }
+    }
+
+    private void cachePrecompressed(String key, byte[] compressed) {
+        synchronized (precompressed) {
+            byte[] previous = precompressed.put(key, compressed);
+            precompressedBytes += compressed.length
+                    - (previous == null ? 0 : previous.length);
+            Iterator<byte[]> eldest = precompressed.values().iterator();
+            while (precompressedBytes > MAX_PRECOMPRESSED_BYTES) {
+                precompressedBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the total size of the cached compressed bodies.
+     *
+     * @return the size in bytes
+     */
+    long getPrecompressedBytes() {
+        synchronized (precompressed) {
+            return precompressedBytes;
+        }
+    }
+
+    /**
+     * Gets the byte ranges requested with the {@code Range} header of the
+     * request.
+     *
+     * @param request
+     *            the request
+     * @param headers
+     *            the headers of the resource, used to evaluate
+     *            {@code If-Range}
+     * @param length
+     *            the length of the resource content
+     * @return the satisfiable ranges as inclusive {@code [first, last]} byte
+     *         positions, an empty list if none of the ranges is satisfiable,
+     *         or {@code null} if the whole content should be sent
+     */
+    static List<long[]> getRequestedRanges(VaadinRequest request,
+            Map<String, String> headers, long length) {
+        String range = request.getHeader("Range");
+        if (range == null || !range.startsWith("bytes=")
+                || !isGetRequest(request)
+                || !matchesIfRange(request.getHeader("If-Range"), headers)) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (String spec : range.substring("bytes=".length()).split(",")) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // suffix range: the last N bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffix);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = dash == spec.length() - 1 ? length - 1
+                            : Long.parseLong(spec.substring(dash + 1));
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    last = Math.min(last, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first < length) {
+                ranges.add(new long[] { first, last });
+            }
+        }
+        // Many small ranges are more likely abuse than a real client
+        return ranges.size() > MAX_RANGES ? null : ranges;
+    }
+
+    private static boolean isGetRequest(VaadinRequest request) {
+        VaadinPortletRequest portletRequest = (VaadinPortletRequest) request;
+        return !portletRequest.isClientDataRequest()
+                || "GET".equalsIgnoreCase(portletRequest.getMethod());
+    }
+
+    private static boolean matchesIfRange(String ifRange,
+            Map<String, String> headers) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires a strong validator
+            String etag = getHeader(headers, "ETag");
+            return etag != null && !ifRange.startsWith("W/")
+                    && ifRange.equals(etag.trim());
+        }
+        long date = VaadinPortletRequest.parseHttpDate(ifRange);
+        long lastModified = VaadinPortletRequest
+                .parseHttpDate(getHeader(headers, "Last-Modified"));
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    private void writeRanges(VaadinSession session, VaadinResponse response,
+            OutputStream outputStream, SeekableStreamResource resource,
+            List<long[]> ranges, String contentType) throws IOException {
+        long length = resource.getLength();
+        if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            response.setHeader("Content-Range",
+                    contentRange(range, length));
+            long count = range[1] - range[0] + 1;
+            if (count <= Integer.MAX_VALUE) {
+                response.setContentLength((int) count);
+            }
+            copyRange(session, resource, range, outputStream);
+            return;
+        }
+        String boundary = Long
+                .toHexString(ThreadLocalRandom.current().nextLong());
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        for (long[] range : ranges) {
+            String partHeader = "\r\n--" + boundary + "\r\nContent-Type: "
+                    + contentType + "\r\nContent-Range: "
+                    + contentRange(range, length) + "\r\n\r\n";
+            outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+            copyRange(session, resource, range, outputStream);
+        }
+        outputStream.write(("\r\n--" + boundary + "--\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + '-' + range[1] + '/' + length;
+    }
+
+    private void copyRange(VaadinSession session,
+            SeekableStreamResource resource, long[] range,
+            OutputStream outputStream) throws IOException {
+        if (resource instanceof FileStreamResource) {
+            try (FileChannel channel = ((FileStreamResource) resource)
+                    .openChannel()) {
+                transfer(channel, range[0], range[1] - range[0] + 1,
+                        outputStream);
+            }
+            return;
+        }
+        InputStream input;
+        // the resource is opened with the session lock held like the
+        // input stream factory of a stream resource
+        session.lock();
         try {
-            response.setContentType(streamResource.getContentTypeResolver()
-                    .apply(streamResource, null));
+            input = resource.open(range[0]);
+        } finally {
+            session.unlock();
+        }
+        byte[] buffer = borrowTransferBuffer();
+        try (InputStream in = input) {
+            long remaining = range[1] - range[0] + 1;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0,
+                        (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Resource ended " + remaining
+                            + " bytes before the end of the range");
+                }
+                outputStream.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            releaseTransferBuffer(buffer);
+        }
+    }
+
+    /**
+     * Copies {@code count} bytes of the file channel starting at
+     * {@code position} to the output stream.
+     * <p>
+     * The portlet response is only available as an output stream, which
+     * can't be the target of {@link FileChannel#transferTo}, so the content
+     * is copied through a pooled heap buffer. A direct buffer would need
+     * another copy into an array for the output stream. The reads are
+     * positional, so a range doesn't need the content before it to be read
+     * and skipped.
+     */
+    private static void transfer(FileChannel channel, long position,
+            long count, OutputStream outputStream) throws IOException {
+        byte[] bytes = borrowTransferBuffer();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (count > 0) {
+                buffer.clear();
+                if (count < buffer.capacity()) {
+                    buffer.limit((int) count);
+                }
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File ended " + count
+                            + " bytes before the end of the resource");
+                }
+                outputStream.write(bytes, 0, read);
+                position += read;
+                count -= read;
+            }
+        } finally {
+            releaseTransferBuffer(bytes);
+        }
+    }
+
+    private static byte[] borrowTransferBuffer() {
+        byte[] buffer = TRANSFER_BUFFERS.poll();
+        return buffer != null ? buffer : new byte[TRANSFER_BUFFER_SIZE];
+    }
+
+    private static void releaseTransferBuffer(byte[] buffer) {
+        // buffers beyond the pool size are left to the garbage collector
+        TRANSFER_BUFFERS.offer(buffer);
+    }
+
+    /**
+     * Checks whether the client already has the current version of a
+     * resource, based on the {@code ETag} and {@code Last-Modified} headers
+     * declared for the resource with {@link StreamResource#setHeader} and the
+     * conditional headers of the request.
+     *
+     * @param request
+     *            the request
+     * @param headers
+     *            the headers of the resource
+     * @return {@code true} if the resource hasn't been modified and the body
+     *         doesn't need to be sent
+     */
+    static boolean isNotModified(VaadinRequest request,
+            Map<String, String> headers) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            String etag = getHeader(headers, "ETag");
+            return etag != null && matchesETag(ifNoneMatch, etag);
+        }
+        long lastModified = VaadinPortletRequest
+                .parseHttpDate(getHeader(headers, "Last-Modified"));
+        if (lastModified < 0) {
+            return false;
+        }
+        long ifModifiedSince = VaadinPortletRequest
+                .parseHttpDate(request.getHeader("If-Modified-Since"));
+        // HTTP dates have a precision of one second
+        return ifModifiedSince >= 0
+                && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        String tag = stripWeakPrefix(etag.trim());
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate)
+                    || tag.equals(stripWeakPrefix(candidate))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String getHeader(Map<String, String> headers,
+            String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Buffers the body like the compressing stream of the response until it
+     * exceeds the compression threshold, so that small bodies are sent as
+     * they are and not cached. Larger bodies are gzip-compressed to the
+     * target, keeping a copy of the compressed body for the cache as long as
+     * it fits into the size limit of a cached body. Closing it doesn't close
+     * the target.
+     */
+    private static final class PrecompressingOutputStream
+            extends OutputStream {
+
+        private final VaadinPortletResponse response;
+        private final OutputStream target;
+        private final int threshold;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private CapturingOutputStream capture;
+        private GZIPOutputStream gzip;
+        private boolean finished;
+
+        private PrecompressingOutputStream(VaadinPortletResponse response,
+                OutputStream target, int threshold) {
+            this.response = response;
+            this.target = target;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException {
+            if (gzip == null) {
+                if (buffer.size() + length <= threshold) {
+                    buffer.write(bytes, offset, length);
+                    return;
+                }
+                response.setGzipEncoded();
+                capture = new CapturingOutputStream(target,
+                        MAX_PRECOMPRESSED_SIZE);
+                gzip = new GZIPOutputStream(capture, 8192);
+                buffer.writeTo(gzip);
+                buffer = null;
+            }
+            gzip.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // a buffered body is kept until it is known whether it gets
+            // compressed
+            if (gzip != null) {
+                gzip.flush();
+            }
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (gzip == null) {
+                buffer.writeTo(target);
+                buffer = null;
+            } else {
+                gzip.finish();
+            }
+        }
+
+        private byte[] getCompressed() {
+            return capture == null ? null : capture.getCaptured();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+
+    /**
+     * Writes through to the target and keeps a copy of the written bytes as
+     * long as they fit into the limit. Closing it doesn't close the target.
+     */
+    private static final class CapturingOutputStream extends OutputStream {
+
+        private final OutputStream target;
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private CapturingOutputStream(OutputStream target, int limit) {
+            this.target = target;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException {
+            target.write(bytes, offset, length);
+            if (copy != null) {
+                if (copy.size() + length > limit) {
+                    copy = null;
+                } else {
+                    copy.write(bytes, offset, length);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        private byte[] getCaptured() {
+            return copy == null ? null : copy.toByteArray();
+        }
+    }
+
+    private String resolveContentType(VaadinRequest request,
+            StreamResource streamResource) {
+        try {
+            return streamResource.getContentTypeResolver()
+                    .apply(streamResource, null);
         } catch (NullPointerException e) {
-            response.setContentType(Optional
-                    .ofNullable(context.getMimeType(streamResource.getName()))
-                    .orElse("application/octet-stream"));
+            return getMimeType(((VaadinPortletRequest) request)
+                    .getPortletContext(), streamResource.getName());
         }
     }
+
+    private String getMimeType(PortletContext context, String name) {
+        int dot = name == null ? -1 : name.lastIndexOf('.');
+        if (dot < 0) {
+            return lookupMimeType(context, name);
+        }
+        // The container resolves MIME types by extension, which allows to
+        // avoid asking it again for every request
+        return mimeTypes.computeIfAbsent(
+                name.substring(dot + 1).toLowerCase(Locale.ENGLISH),
+                extension -> lookupMimeType(context, name));
+    }
+
+    private static String lookupMimeType(PortletContext context,
+            String name) {
+        return Optional.ofNullable(context.getMimeType(name))
+                .orElse("application/octet-stream");
+    }
 }
@@ -9,12 +9,17 @@
 package com.vaadin.flow.portal;
 
 import javax.portlet.MimeResponse;
-import javax.portlet.PortletResponse;
 import javax.portlet.ResourceURL;
 
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.server.AbstractStreamResource;
 import com.vaadin.flow.server.StreamRegistration;
 import com.vaadin.flow.server.StreamResource;
@@ -32,6 +37,13 @@ import com.vaadin.flow.server.StreamResourceRegistry;
  */
 class PortletStreamResourceRegistry extends StreamResourceRegistry {
 
+    /**
+     * Index of the registered resources which can be queried without the
+     * session lock so that resource requests don't queue behind a long
+     * request holding the lock.
+     */
+    private final Map<ResourceKey, AbstractStreamResource> index = new ConcurrentHashMap<>();
+
     /**
      * Creates stream resource registry for provided {@code session}.
      *
@@ -42,19 +54,51 @@ class PortletStreamResourceRegistry extends StreamResourceRegistry {
         super(session);
     }
 
-    @Override
-    public URI getTargetURI(AbstractStreamResource resource) {
-        return doGetUri(resource);
-    }
-
     @Override
     public StreamRegistration registerResource(
             AbstractStreamResource resource) {
         StreamRegistration streamRegistration = super.registerResource(
                 resource);
+        UI ui = UI.getCurrent();
+        if (ui != null) {
+            index.put(new ResourceKey(ui.getUIId(), resource.getId(),
+                    resource.getName()), resource);
+        }
         return new RegistrationWrapper(streamRegistration);
     }
 
+    @Override
+    public void unregisterResource(AbstractStreamResource resource) {
+        super.unregisterResource(resource);
+        index.values().remove(resource);
+    }
+
+    /**
+     * Finds a registered resource by the parts of its URI without locking
+     * the session.
+     * <p>
+     * Only the lookup is lock-free: the resource must still be used with the
+     * session locked wherever its own contract requires it.
+     *
+     * @param uiId
+     *            the id of the UI the resource was registered for
+     * @param id
+     *            the resource id, i.e. its security key
+     * @param name
+     *            the resource name, not URL-encoded
+     * @return the resource, or an empty optional if no such resource is
+     *         registered
+     */
+    Optional<AbstractStreamResource> findResource(int uiId, String id,
+            String name) {
+        return Optional.ofNullable(index.get(new ResourceKey(uiId, id, name)));
+    }
+
+    @Override
+    public URI getTargetURI(AbstractStreamResource resource) {
+        return doGetUri(resource);
+    }
+
     /**
      * StreamRegistration implementation which embeds dynamic resource url into
      * portlet url as a 'resourceUrl' query parameter, see {@link ResourceURL}.
@@ -83,17 +127,47 @@ class PortletStreamResourceRegistry extends StreamResourceRegistry {
         }
     }
 
+    private static final class ResourceKey implements Serializable {
+
+        private final int uiId;
+        private final String id;
+        private final String name;
+
+        private ResourceKey(int uiId, String id, String name) {
+            this.uiId = uiId;
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResourceKey)) {
+                return false;
+            }
+            ResourceKey other = (ResourceKey) obj;
+            return uiId == other.uiId && id.equals(other.id)
+                    && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(uiId, id, name);
+        }
+    }
+
     private URI doGetUri(AbstractStreamResource resource) {
-        PortletResponse response = VaadinPortletService.getCurrentResponse()
-                .getPortletResponse();
-        if (response instanceof MimeResponse) {
-            MimeResponse mimeResponse = (MimeResponse) response;
-            ResourceURL resourceURL = mimeResponse.createResourceURL();
-            resourceURL.setResourceID(startWithSlash(getURI(resource)));
+        VaadinPortletResponse response = VaadinPortletService
+                .getCurrentResponse();
+        if (response.getPortletResponse() instanceof MimeResponse) {
+            String resourceURL = response
+                    .createResourceURL(startWithSlash(getURI(resource)));
             try {
                 // In Liferay resourceURL is absolute, whereas in Pluto it is
                 // relative
-                URI uri = new URI(resourceURL.toString());
+                URI uri = new URI(resourceURL);
                 if (!uri.isAbsolute()) {
                     uri = new URI("." + uri);
                 }
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+/**
+ * Upload target which keeps small uploads in memory and spills larger ones
+ * to a temporary file.
+ * <p>
+ * Return the stream of {@link #createOutputStream()} from an upload receiver
+ * to avoid holding large files on the heap. Together with
+ * {@link PortletConstants#PORTLET_PARAMETER_STREAMING_UPLOAD} the uploaded
+ * bytes are then never buffered completely in memory.
+ * <p>
+ * The buffer holds the content of one upload at a time. Call
+ * {@link #dispose()} once the content is no longer needed to delete the
+ * temporary file.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class PortletUploadBuffer implements Serializable {
+
+    /**
+     * The default number of bytes kept in memory before the upload is
+     * written to a temporary file.
+     */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 256 * 1024;
+
+    private final int memoryThreshold;
+    private final File directory;
+
+    private transient DeferredFileOutputStream output;
+
+    /**
+     * Creates a buffer with the {@link #DEFAULT_MEMORY_THRESHOLD default
+     * memory threshold} which spills to the default temporary directory.
+     */
+    public PortletUploadBuffer() {
+        this(DEFAULT_MEMORY_THRESHOLD, null);
+    }
+
+    /**
+     * Creates a buffer with the given memory threshold.
+     *
+     * @param memoryThreshold
+     *            the number of bytes kept in memory before the content is
+     *            written to a temporary file
+     * @param directory
+     *            the directory of the temporary file, or {@code null} to use
+     *            the default temporary directory
+     */
+    public PortletUploadBuffer(int memoryThreshold, File directory) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "Memory threshold can't be negative: " + memoryThreshold);
+        }
+        this.memoryThreshold = memoryThreshold;
+        this.directory = directory;
+    }
+
+    /**
+     * Creates the output stream which the uploaded content is written to,
+     * discarding any previous content of this buffer.
+     *
+     * @return the output stream for the upload
+     */
+    public OutputStream createOutputStream() {
+        dispose();
+        output = new DeferredFileOutputStream(memoryThreshold,
+                "vaadin-upload-", ".tmp", directory);
+        return output;
+    }
+
+    /**
+     * Checks whether the uploaded content is held in memory.
+     *
+     * @return {@code true} if the content is in memory, {@code false} if it
+     *         has been written to a temporary file
+     */
+    public boolean isInMemory() {
+        return output == null || output.isInMemory();
+    }
+
+    /**
+     * Gets the temporary file holding the uploaded content.
+     *
+     * @return the temporary file, or {@code null} if the content is held in
+     *         memory
+     */
+    public File getFile() {
+        return output == null ? null : output.getFile();
+    }
+
+    /**
+     * Gets the number of uploaded bytes.
+     *
+     * @return the size of the content in bytes
+     */
+    public long getSize() {
+        return output == null ? 0 : output.getByteCount();
+    }
+
+    /**
+     * Opens the uploaded content for reading. The output stream must have
+     * been closed.
+     *
+     * @return an input stream of the uploaded content
+     * @throws IOException
+     *             if the temporary file can't be opened
+     */
+    public InputStream getInputStream() throws IOException {
+        if (output == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        if (output.isInMemory()) {
+            return new ByteArrayInputStream(output.getData());
+        }
+        return Files.newInputStream(output.getFile().toPath());
+    }
+
+    /**
+     * Discards the uploaded content and deletes the temporary file, if any.
+     */
+    public void dispose() {
+        if (output != null && !output.isInMemory()) {
+            try {
+                Files.deleteIfExists(output.getFile().toPath());
+            } catch (IOException e) {
+                output.getFile().deleteOnExit();
+            }
+        }
+        output = null;
+    }
+}
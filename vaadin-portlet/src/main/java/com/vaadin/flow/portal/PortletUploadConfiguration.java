@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.Serializable;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+
+/**
+ * Upload settings of a portlet, read once from the deployment configuration
+ * when the request handlers are created.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletUploadConfiguration implements Serializable {
+
+    private static final int DEFAULT_PARALLEL_SESSION_LIMIT = 2;
+
+    private static final int UNLIMITED = -1;
+
+    private final boolean streaming;
+    private final boolean parallel;
+    private final int parallelThreads;
+    private final int parallelSessionLimit;
+    private final long maxRequestSize;
+    private final long maxFileSize;
+    private final int sessionLimit;
+    private final int portletLimit;
+
+    private PortletUploadConfiguration(DeploymentConfiguration configuration) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (configuration == null) {
+            streaming = false;
+            parallel = false;
+            parallelThreads = processors;
+            parallelSessionLimit = DEFAULT_PARALLEL_SESSION_LIMIT;
+            maxRequestSize = UNLIMITED;
+            maxFileSize = UNLIMITED;
+            sessionLimit = UNLIMITED;
+            portletLimit = UNLIMITED;
+            return;
+        }
+        streaming = configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_STREAMING_UPLOAD, false);
+        parallel = streaming && configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_PARALLEL_UPLOAD, false);
+        parallelThreads = PortletParameters.getPositiveInt(configuration,
+                PortletConstants.PORTLET_PARAMETER_PARALLEL_UPLOAD_THREADS,
+                processors);
+        parallelSessionLimit = PortletParameters.getPositiveInt(configuration,
+                PortletConstants.PORTLET_PARAMETER_PARALLEL_UPLOAD_SESSION_LIMIT,
+                DEFAULT_PARALLEL_SESSION_LIMIT);
+        maxRequestSize = PortletParameters.getPositive(configuration,
+                PortletConstants.PORTLET_PARAMETER_UPLOAD_MAX_REQUEST_SIZE,
+                UNLIMITED);
+        maxFileSize = PortletParameters.getPositive(configuration,
+                PortletConstants.PORTLET_PARAMETER_UPLOAD_MAX_FILE_SIZE,
+                UNLIMITED);
+        sessionLimit = PortletParameters.getPositiveInt(configuration,
+                PortletConstants.PORTLET_PARAMETER_UPLOAD_SESSION_LIMIT,
+                UNLIMITED);
+        portletLimit = PortletParameters.getPositiveInt(configuration,
+                PortletConstants.PORTLET_PARAMETER_UPLOAD_PORTLET_LIMIT,
+                UNLIMITED);
+    }
+
+    /**
+     * Reads the upload settings from the given configuration.
+     *
+     * @param configuration
+     *            the deployment configuration, or {@code null} to use the
+     *            defaults
+     * @return the upload configuration
+     */
+    static PortletUploadConfiguration create(
+            DeploymentConfiguration configuration) {
+        return new PortletUploadConfiguration(configuration);
+    }
+
+    /**
+     * Checks whether multipart uploads are streamed from the request input
+     * stream to the receivers instead of being parsed by the portlet
+     * container.
+     *
+     * @return {@code true} to stream uploads, {@code false} to use the parts
+     *         parsed by the container
+     * @see PortletConstants#PORTLET_PARAMETER_STREAMING_UPLOAD
+     */
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Checks whether the files of a streamed upload are handed to their
+     * receivers on a thread pool.
+     *
+     * @return {@code true} to process uploaded files in parallel
+     * @see PortletConstants#PORTLET_PARAMETER_PARALLEL_UPLOAD
+     */
+    boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Gets the number of threads processing uploaded files in parallel.
+     *
+     * @return the number of threads
+     * @see PortletConstants#PORTLET_PARAMETER_PARALLEL_UPLOAD_THREADS
+     */
+    int getParallelThreads() {
+        return parallelThreads;
+    }
+
+    /**
+     * Gets the number of uploaded files of one session which may be
+     * processed in parallel.
+     *
+     * @return the per-session limit
+     * @see PortletConstants#PORTLET_PARAMETER_PARALLEL_UPLOAD_SESSION_LIMIT
+     */
+    int getParallelSessionLimit() {
+        return parallelSessionLimit;
+    }
+
+    /**
+     * Gets the maximum size of an upload request.
+     *
+     * @return the maximum size in bytes, or {@code -1} if unlimited
+     * @see PortletConstants#PORTLET_PARAMETER_UPLOAD_MAX_REQUEST_SIZE
+     */
+    long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    /**
+     * Gets the maximum size of one uploaded file.
+     *
+     * @return the maximum size in bytes, or {@code -1} if unlimited
+     * @see PortletConstants#PORTLET_PARAMETER_UPLOAD_MAX_FILE_SIZE
+     */
+    long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Gets the maximum number of concurrent uploads of one session.
+     *
+     * @return the limit, or {@code -1} if unlimited
+     * @see PortletConstants#PORTLET_PARAMETER_UPLOAD_SESSION_LIMIT
+     */
+    int getSessionLimit() {
+        return sessionLimit;
+    }
+
+    /**
+     * Gets the maximum number of concurrent uploads of the portlet.
+     *
+     * @return the limit, or {@code -1} if unlimited
+     * @see PortletConstants#PORTLET_PARAMETER_UPLOAD_PORTLET_LIMIT
+     */
+    int getPortletLimit() {
+        return portletLimit;
+    }
+}
@@ -447,8 +447,12 @@ public final class PortletViewContext implements Serializable {
             String portletMode) {
         String portletRegistryName = VaadinPortletService.getCurrentResponse()
                 .getPortletResponse().getNamespace();
-        boolean reloadAfterChange =
-                !(VaadinPortletService.getCurrentRequest() instanceof VaadinLiferayRequest);
+        VaadinPortletRequest request = VaadinPortletService
+                .getCurrentRequest();
+        boolean reloadAfterChange = request == null
+                || request.getService() == null
+                || request.getService().getPortalAdapter()
+                        .isReloadAfterStateChange();
         return String
                 .format("window.Vaadin.Flow.Portlets.setPortletState('%s', '%s', '%s', %b);",
                         portletRegistryName, windowState, portletMode, reloadAfterChange);
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+
+/**
+ * Limits of the view contexts kept in a session for a portlet, read once
+ * from the deployment configuration.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletViewContextLimits implements Serializable {
+
+    private static final int UNLIMITED = -1;
+
+    private final int maxViews;
+    private final long maxIdleMillis;
+
+    private PortletViewContextLimits(DeploymentConfiguration configuration) {
+        if (configuration == null) {
+            maxViews = UNLIMITED;
+            maxIdleMillis = UNLIMITED;
+            return;
+        }
+        maxViews = PortletParameters.getPositiveInt(configuration,
+                PortletConstants.PORTLET_PARAMETER_VIEW_CONTEXT_LIMIT,
+                UNLIMITED);
+        long ttl = PortletParameters.getPositive(configuration,
+                PortletConstants.PORTLET_PARAMETER_VIEW_CONTEXT_TTL,
+                UNLIMITED);
+        maxIdleMillis = ttl == UNLIMITED ? UNLIMITED
+                : TimeUnit.SECONDS.toMillis(ttl);
+    }
+
+    /**
+     * Reads the view context limits from the given configuration.
+     *
+     * @param configuration
+     *            the deployment configuration, or {@code null} to use no
+     *            limits
+     * @return the view context limits
+     */
+    static PortletViewContextLimits create(
+            DeploymentConfiguration configuration) {
+        return new PortletViewContextLimits(configuration);
+    }
+
+    /**
+     * Gets the maximum number of view contexts of the portlet in one
+     * session.
+     *
+     * @return the maximum number, or {@code -1} if unlimited
+     * @see PortletConstants#PORTLET_PARAMETER_VIEW_CONTEXT_LIMIT
+     */
+    int getMaxViews() {
+        return maxViews;
+    }
+
+    /**
+     * Gets the time after which an unused view context is evicted.
+     *
+     * @return the time in milliseconds, or {@code -1} if unlimited
+     * @see PortletConstants#PORTLET_PARAMETER_VIEW_CONTEXT_TTL
+     */
+    long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+}
@@ -39,11 +39,9 @@ class PortletWebComponentBootstrapHandler
     @Override
     protected String getServiceUrl(VaadinRequest request,
             VaadinResponse response) {
-        final String namespace = ((VaadinPortletResponse) response)
-                .getPortletResponse().getNamespace();
-        VaadinPortletSession session = VaadinPortletSession.getCurrent();
         return Objects.requireNonNull(VaadinPortlet.getCurrent())
-                .getWebComponentUIDLRequestHandlerURL(session, namespace);
+                .getWebComponentUIDLRequestHandlerURL(
+                        (VaadinPortletResponse) response);
     }
 
     @Override
@@ -95,23 +93,11 @@ class PortletWebComponentBootstrapHandler
 
     private String getStaticResourcesMappingURI(
             DeploymentConfiguration configuration) {
-        String uri = configuration.getStringProperty(
-                PortletConstants.PORTLET_PARAMETER_STATIC_RESOURCES_MAPPING,
-                "/vaadin-portlet-static/");
-        if (uri.isEmpty()) {
-            return "/";
+        VaadinPortlet<?> portlet = VaadinPortlet.getCurrent();
+        if (portlet != null) {
+            return portlet.getDescriptor().getStaticResourcesMappingURI();
         }
-        if (uri.charAt(0) == '/' && uri.charAt(uri.length() - 1) == '/') {
-            return uri;
-        }
-        StringBuilder result = new StringBuilder(uri);
-        if (uri.charAt(0) != '/') {
-            result.insert(0, '/');
-        }
-        if (uri.charAt(uri.length() - 1) != '/') {
-            result.append('/');
-        }
-        return result.toString();
+        return PortletDescriptor.getStaticResourcesMappingURI(configuration);
     }
 
     @Override
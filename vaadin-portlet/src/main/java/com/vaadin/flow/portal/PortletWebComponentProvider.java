@@ -21,23 +21,61 @@ import com.vaadin.flow.server.communication.WebComponentProvider;
 class PortletWebComponentProvider extends WebComponentProvider {
 
     public PortletWebComponentProvider() {
-        // Disable tag-based cache because the same tag should yield different
-        // bootstrap responses in separate portlet namespaces.
+        // The script of the portlet tag is cached in the PortletDescriptor
+        // instead: the tag-based cache would skip generateNPMResponse, which
+        // sets the caching headers of the response.
         setCacheEnabled(false);
     }
 
-    // TODO: Update WebComponentProvider API to pass also the
-    // current VaadinReponse instance, to avoid having to rely on
-    // VaadinPortletResponse.getCurrent() here.
     @Override
     protected String generateNPMResponse(String tagName, VaadinRequest request,
             VaadinResponse response) {
-        String namespace = ((VaadinPortletResponse) response)
-                .getPortletResponse().getNamespace();
-        VaadinPortletSession session = VaadinPortletSession.getCurrent();
-        String webcomponentBootstrapUrl = VaadinPortlet.getCurrent()
-                .getWebComponentBootstrapHandlerURL(session, namespace);
-        return "var bootstrapAddress='" + webcomponentBootstrapUrl + "';\n"
-                + bootstrapNpm();
+        PortletDescriptor descriptor = VaadinPortlet.getCurrent()
+                .getDescriptor();
+        if (!descriptor.getTag().equals(tagName)) {
+            return getProviderScript(tagName);
+        }
+        // The script doesn't depend on the portlet window, and its URL
+        // changes along with the script version, so the browser may keep it
+        response.setHeader("ETag",
+                '"' + descriptor.getProviderScriptVersion() + '"');
+        response.setHeader("Cache-Control",
+                "public, max-age=31536000, immutable");
+        return descriptor.getProviderScript();
+    }
+
+    /**
+     * Gets the script which bootstraps the portlet web components with the
+     * given {@code tag}.
+     * <p>
+     * The script is the same for all portlet windows: it bootstraps every
+     * element of the tag on the page which has not been bootstrapped yet,
+     * using the web component bootstrap handler URL of the element's
+     * {@code data-bootstrap-url} attribute. Elements with the
+     * {@code data-bootstrap-lazy} attribute are skipped. The script also
+     * stores the bootstrap function as
+     * {@code window.Vaadin.Flow.portletBootstrap[tag]}.
+     *
+     * @param tag
+     *            the tag of the portlet main component
+     * @return the web component provider script
+     */
+    String getProviderScript(String tag) {
+        return "window.Vaadin=window.Vaadin||{};\n"
+                + "window.Vaadin.Flow=window.Vaadin.Flow||{};\n"
+                + "window.Vaadin.Flow.portletBootstrap="
+                + "window.Vaadin.Flow.portletBootstrap||{};\n"
+                + "window.Vaadin.Flow.portletBootstrap['" + tag
+                + "']=function(){\n"
+                + "var bootstrap=function(bootstrapAddress){\n"
+                + bootstrapNpm() + "\n};\n"
+                + "var elements=document.querySelectorAll('" + tag
+                + "[data-bootstrap-url]:not([data-bootstrap-lazy])"
+                + ":not([data-bootstrap-started])');\n"
+                + "for(var i=0;i<elements.length;i++){\n"
+                + "elements[i].setAttribute('data-bootstrap-started','');\n"
+                + "bootstrap(elements[i].getAttribute('data-bootstrap-url'));\n"
+                + "}\n};\n"
+                + "window.Vaadin.Flow.portletBootstrap['" + tag + "']();\n";
     }
 }
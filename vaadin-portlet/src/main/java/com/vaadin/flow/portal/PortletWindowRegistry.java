@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Per-window state of the views of a portlet, stored as a single session
+ * attribute.
+ * <p>
+ * The state is keyed by the name of the browser window and the namespace of
+ * the portlet in the page, so a view is found with a single lookup.
+ * <p>
+ * A view context is removed when the UI showing its view is detached, e.g.
+ * when the browser tab has been closed and the UI has expired. View contexts
+ * whose UI is closing, or which were never bound to a UI, can be evicted
+ * earlier by the limits in {@link PortletViewContextLimits}; the views that
+ * are still shown are never evicted.
+ * <p>
+ * For internal use only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class PortletWindowRegistry implements Serializable {
+
+    private static final String SESSION_SUBKEY = "windows";
+
+    private final Map<WindowKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile long nextIdleCheck;
+
+    // orders the view contexts by their last use, independent of the
+    // resolution of the clock
+    private final AtomicLong useCounter = new AtomicLong();
+
+    /**
+     * Gets the name of the session attribute holding the registry of the
+     * given portlet class.
+     *
+     * @param portletClass
+     *            the portlet class
+     * @return the attribute name
+     */
+    static String getAttributeName(Class<?> portletClass) {
+        return portletClass.getName() + "-" + SESSION_SUBKEY;
+    }
+
+    /**
+     * Gets the registry stored in the session under the given attribute.
+     * <p>
+     * The session must be locked when a registry may be created.
+     *
+     * @param session
+     *            the Vaadin session
+     * @param attributeName
+     *            the attribute name, see {@link #getAttributeName(Class)}
+     * @param create
+     *            {@code true} to create the registry if it doesn't exist
+     * @return the registry, or {@code null} if there is none and
+     *         {@code create} is {@code false}
+     */
+    static PortletWindowRegistry get(VaadinSession session,
+            String attributeName, boolean create) {
+        PortletWindowRegistry registry = (PortletWindowRegistry) session
+                .getAttribute(attributeName);
+        if (registry == null && create) {
+            registry = new PortletWindowRegistry();
+            session.setAttribute(attributeName, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Gets the view context of the portlet in the given window and
+     * namespace, marking it as used.
+     * <p>
+     * View contexts of closed UIs that have been idle for too long are
+     * evicted on the way.
+     *
+     * @param windowName
+     *            the browser window name
+     * @param namespace
+     *            the portlet namespace
+     * @param limits
+     *            the limits of the view contexts
+     * @return the view context, or {@code null} if there is none
+     */
+    PortletViewContext getViewContext(String windowName, String namespace,
+            PortletViewContextLimits limits) {
+        long now = System.currentTimeMillis();
+        long maxIdle = limits.getMaxIdleMillis();
+        if (maxIdle > 0 && now >= nextIdleCheck) {
+            nextIdleCheck = now + maxIdle;
+            evictIdle(null, now - maxIdle);
+        }
+        WindowKey key = new WindowKey(windowName, namespace);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = now;
+        entry.lastUse = useCounter.incrementAndGet();
+        UI ui = entry.ui;
+        if (ui != null && entry.detachRegistration == null) {
+            // the session has been restored, which doesn't restore the
+            // registration of the detach listener
+            listenToDetach(key, entry, ui);
+        }
+        return entry.context;
+    }
+
+    /**
+     * Stores the view context of the portlet in the given window and
+     * namespace, and evicts view contexts exceeding the given limits.
+     *
+     * @param windowName
+     *            the browser window name
+     * @param namespace
+     *            the portlet namespace
+     * @param context
+     *            the view context
+     * @param limits
+     *            the limits of the view contexts
+     */
+    void setViewContext(String windowName, String namespace,
+            PortletViewContext context, PortletViewContextLimits limits) {
+        Entry entry = new Entry(context, useCounter.incrementAndGet());
+        Entry previous = entries.put(new WindowKey(windowName, namespace),
+                entry);
+        if (previous != null) {
+            previous.unbind();
+        }
+        long maxIdle = limits.getMaxIdleMillis();
+        if (maxIdle > 0) {
+            evictIdle(entry, System.currentTimeMillis() - maxIdle);
+        }
+        evictLeastRecentlyUsed(entry, limits.getMaxViews());
+    }
+
+    /**
+     * Removes the view context of the portlet in the given window and
+     * namespace when the given UI is detached, unless the view has been
+     * moved to another UI by then.
+     *
+     * @param windowName
+     *            the browser window name
+     * @param namespace
+     *            the portlet namespace
+     * @param ui
+     *            the UI showing the view
+     */
+    void bindToUI(String windowName, String namespace, UI ui) {
+        WindowKey key = new WindowKey(windowName, namespace);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.ui == ui) {
+            return;
+        }
+        // a preserved view is moved to the UI of the refreshed page
+        entry.unbind();
+        entry.ui = ui;
+        listenToDetach(key, entry, ui);
+    }
+
+    /**
+     * Checks whether the registry has a view context for any namespace in the
+     * given window.
+     * <p>
+     * This iterates over all the stored views; it is meant for the
+     * uncommon case of a lookup miss.
+     *
+     * @param windowName
+     *            the browser window name
+     * @return {@code true} if the window has a view context
+     */
+    boolean hasWindow(String windowName) {
+        return entries.keySet().stream()
+                .anyMatch(key -> Objects.equals(key.windowName, windowName));
+    }
+
+    /**
+     * Gets the number of stored view contexts.
+     *
+     * @return the number of view contexts
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private void listenToDetach(WindowKey key, Entry entry, UI ui) {
+        entry.detachRegistration = ui.addDetachListener(event -> {
+            if (entry.ui == ui && entries.remove(key, entry)) {
+                entry.unbind();
+            }
+        });
+    }
+
+    private void evictIdle(Entry current, long idleSince) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry != current && entry.lastAccess < idleSince
+                    && entry.isReleased()) {
+                iterator.remove();
+                entry.unbind();
+            }
+        }
+    }
+
+    private void evictLeastRecentlyUsed(Entry current, int maxViews) {
+        while (maxViews > 0 && entries.size() > maxViews) {
+            Map.Entry<WindowKey, Entry> eldest = null;
+            for (Map.Entry<WindowKey, Entry> candidate : entries.entrySet()) {
+                Entry entry = candidate.getValue();
+                if (entry != current && entry.isReleased() && (eldest == null
+                        || entry.lastUse < eldest.getValue().lastUse)) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null) {
+                // the remaining views are still shown
+                return;
+            }
+            if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                eldest.getValue().unbind();
+            }
+        }
+    }
+
+    private static final class Entry implements Serializable {
+        private final PortletViewContext context;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile long lastUse;
+
+        private UI ui;
+        // not serialized, so the detach listener is registered again on the
+        // first lookup after deserialization
+        private transient Registration detachRegistration;
+
+        private Entry(PortletViewContext context, long lastUse) {
+            this.context = context;
+            this.lastUse = lastUse;
+        }
+
+        /**
+         * Checks whether the view is no longer shown in a UI, so that
+         * evicting the context releases it instead of initializing the view
+         * again on its next request.
+         */
+        private boolean isReleased() {
+            UI current = ui;
+            return current == null || current.isClosing()
+                    || current.getSession() == null;
+        }
+
+        private void unbind() {
+            if (detachRegistration != null) {
+                detachRegistration.remove();
+                detachRegistration = null;
+            }
+            ui = null;
+        }
+    }
+
+    private static final class WindowKey implements Serializable {
+        private final String windowName;
+        private final String namespace;
+        private final int hash;
+
+        private WindowKey(String windowName, String namespace) {
+            this.windowName = windowName;
+            this.namespace = namespace;
+            hash = 31 * Objects.hashCode(windowName)
+                    + Objects.hashCode(namespace);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey other = (WindowKey) obj;
+            return hash == other.hash
+                    && Objects.equals(windowName, other.windowName)
+                    && Objects.equals(namespace, other.namespace);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
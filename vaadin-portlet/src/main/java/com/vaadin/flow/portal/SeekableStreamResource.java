@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+
+import com.vaadin.flow.server.StreamResource;
+
+/**
+ * A {@link StreamResource} with a known length whose content can be read
+ * starting from any offset.
+ * <p>
+ * Portlets serve such resources with HTTP range support: clients can request
+ * parts of the content (e.g. to seek in a video or to resume an interrupted
+ * download) instead of downloading it all.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class SeekableStreamResource extends StreamResource {
+
+    /**
+     * Opens the content of a seekable resource from a given offset.
+     */
+    @FunctionalInterface
+    public interface OffsetInputStreamFactory extends Serializable {
+
+        /**
+         * Opens an input stream which starts at the given {@code offset} of
+         * the resource content.
+         *
+         * @param offset
+         *            the offset of the first byte to read, in bytes
+         * @return an input stream positioned at the offset
+         * @throws IOException
+         *             if the stream can't be opened
+         */
+        InputStream open(long offset) throws IOException;
+    }
+
+    private final long length;
+
+    private final OffsetInputStreamFactory factory;
+
+    /**
+     * Creates a new seekable resource.
+     *
+     * @param name
+     *            the resource file name
+     * @param length
+     *            the length of the resource content in bytes
+     * @param factory
+     *            the factory which opens the content from a given offset
+     */
+    public SeekableStreamResource(String name, long length,
+            OffsetInputStreamFactory factory) {
+        super(name, () -> {
+            try {
+                return factory.open(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (length < 0) {
+            throw new IllegalArgumentException(
+                    "Length can't be negative: " + length);
+        }
+        this.length = length;
+        this.factory = factory;
+    }
+
+    /**
+     * Gets the length of the resource content.
+     *
+     * @return the content length in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Opens the resource content starting from the given {@code offset}.
+     *
+     * @param offset
+     *            the offset of the first byte to read, in bytes
+     * @return an input stream positioned at the offset
+     * @throws IOException
+     *             if the stream can't be opened
+     */
+    public InputStream open(long offset) throws IOException {
+        return factory.open(offset);
+    }
+}
@@ -104,7 +104,9 @@ public abstract class VaadinHttpAndPortletRequest extends VaadinPortletRequest {
     @Override
     public Enumeration<String> getHeaderNames() {
         Enumeration<String> headerNames = super.getHeaderNames();
-        if (headerNames == null && getOriginalRequest() != null) {
+        // portlet request properties may not include the HTTP headers
+        if ((headerNames == null || !headerNames.hasMoreElements())
+                && getOriginalRequest() != null) {
             headerNames = getOriginalRequest().getHeaderNames();
         }
         return headerNames;
@@ -113,7 +115,8 @@ public abstract class VaadinHttpAndPortletRequest extends VaadinPortletRequest {
     @Override
     public Enumeration<String> getHeaders(String name) {
         Enumeration<String> headers = super.getHeaders(name);
-        if (headers == null && getOriginalRequest() != null) {
+        if ((headers == null || !headers.hasMoreElements())
+                && getOriginalRequest() != null) {
             headers = getOriginalRequest().getHeaders(name);
         }
         return headers;
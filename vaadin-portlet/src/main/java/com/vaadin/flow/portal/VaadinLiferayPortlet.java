@@ -9,10 +9,13 @@
 package com.vaadin.flow.portal;
 
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 import javax.portlet.HeaderRequest;
 import javax.portlet.HeaderResponse;
+import javax.portlet.PortletConfig;
 import javax.portlet.PortletException;
 import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
@@ -29,6 +32,19 @@ import com.vaadin.flow.server.VaadinRequest;
 public abstract class VaadinLiferayPortlet<C extends Component>
         extends VaadinPortlet<C> {
 
+    private static final String REGISTRATION_HELPER_PATH = "scripts/LiferayPortletRegistrationHelper.js";
+
+    // Registration helper, loaded once in production mode
+    private String registrationHelper;
+
+    @Override
+    public void init(PortletConfig config) throws PortletException {
+        super.init(config);
+        if (getService().getDeploymentConfiguration().isProductionMode()) {
+            registrationHelper = loadRegistrationHelper();
+        }
+    }
+
     @Override
     public void renderHeaders(HeaderRequest request, HeaderResponse response) {
         // Skip most of renderHeaders for liferay portlets as it is called inconsistently between different versions (7.2, 7.3).
@@ -65,10 +81,11 @@ public abstract class VaadinLiferayPortlet<C extends Component>
          */
         response.getWriter().println(
                 getPortletScriptTag(request, "scripts/PortletMethods.js"));
+        writePreloadHints(response);
 
         // we don't actually know if the portlet is a 3.0 one here, but we need to stop the IPC errors from being thrown
         // with liferay 7.3 the portlet generally fails to render if the exception is thrown
-        isPortlet3.set(true);
+        markPortlet3();
     }
 
     @Override
@@ -79,7 +96,7 @@ public abstract class VaadinLiferayPortlet<C extends Component>
     }
 
     private boolean checkStaticResourcesConfiguration() {
-        return getStaticResourcesPath().startsWith("/o/");
+        return getDescriptor().getStaticResourcesPath().startsWith("/o/");
     }
 
     // For portlets added to Liferay Content Pages we need to be sure that both
@@ -90,22 +107,46 @@ public abstract class VaadinLiferayPortlet<C extends Component>
     @Override
     String portletElementRegistrationScript(VaadinRequest request,
             String scriptUrl, String registrationInstruction) {
-        String portletMethodScriptUrl = getPortletScriptTag(
+        String portletMethodScriptUrl = getPortletScriptUrl(
                 (RenderRequest) ((VaadinPortletRequest) request)
                         .getPortletRequest(),
-                "scripts/PortletMethods.js")
-                        .replaceFirst("^.*src=\"([^\"]+)\".*", "$1");
-
-        StringBuilder initScript = new StringBuilder();
-        try (Scanner scanner = new Scanner(getPortletContext()
-                .getResourceAsStream("scripts/LiferayPortletRegistrationHelper.js"))
-                        .useDelimiter("\\A")) {
-            initScript.append(scanner.next());
+                "scripts/PortletMethods.js");
+
+        // In development mode the helper is read on every render so that it
+        // can be edited without redeploying the portlet
+        String helper = registrationHelper != null ? registrationHelper
+                : loadRegistrationHelper();
+        StringBuilder initScript = new StringBuilder(helper.length()
+                + registrationInstruction.length() + 256);
+        initScript.append(helper).append("([");
+        if (scriptUrl != null) {
+            initScript.append('\'').append(scriptUrl).append("',");
+        }
+        initScript.append('\'').append(portletMethodScriptUrl)
+                .append("'], function() { ").append(registrationInstruction)
+                .append(';');
+        if (scriptUrl != null) {
+            // The provider script is loaded only once per page, so it has to
+            // be run again for the elements added after it was loaded
+            initScript.append(getDescriptor().getRenderTemplate()
+                    .getBootstrapInstruction());
         }
-        initScript.append("(['").append(scriptUrl).append("','")
-                .append(portletMethodScriptUrl).append("'], function() { ")
-                .append(registrationInstruction).append(";})");
+        initScript.append("})");
         return initScript.toString();
     }
 
+    private String loadRegistrationHelper() {
+        try (InputStream stream = getPortletContext()
+                .getResourceAsStream(REGISTRATION_HELPER_PATH)) {
+            if (stream == null) {
+                throw new IllegalStateException(
+                        "Could not find " + REGISTRATION_HELPER_PATH);
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Could not read " + REGISTRATION_HELPER_PATH, e);
+        }
+    }
+
 }
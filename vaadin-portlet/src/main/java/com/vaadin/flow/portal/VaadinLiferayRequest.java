@@ -11,9 +11,14 @@ package com.vaadin.flow.portal;
 import javax.portlet.PortletRequest;
 import javax.servlet.http.HttpServletRequest;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.liferay.portal.kernel.portlet.LiferayPortletRequest;
 import com.liferay.portal.kernel.util.PortalClassLoaderUtil;
 import com.liferay.portal.kernel.util.PropsUtil;
@@ -22,16 +27,11 @@ import com.liferay.portal.kernel.util.PropsUtil;
  * Portlet request for Liferay.
  */
 public class VaadinLiferayRequest extends VaadinHttpAndPortletRequest {
-    /**
-     * The PortalUtil class to use. Set to either
-     * {@link #LIFERAY_6_PORTAL_UTIL} or {@link #LIFERAY_7_PORTAL_UTIL} the
-     * first time it is needed.
-     */
-    private static String portalUtilClass = null;
     private static final String LIFERAY_6_PORTAL_UTIL = "com.liferay.portal.util.PortalUtil";
     private static final String LIFERAY_7_PORTAL_UTIL = "com.liferay.portal.kernel.util.PortalUtil";
     private static final String LIFERAY_7_PORTLET_UTIL = "com.liferay.portlet.LiferayPortletUtil";
     private static final String PORTLET_REQUEST_CLASS = "javax.portlet.PortletRequest";
+    private static final String HTTP_SERVLET_REQUEST_CLASS = "javax.servlet.http.HttpServletRequest";
 
     public VaadinLiferayRequest(PortletRequest request,
             VaadinPortletService vaadinService) {
@@ -43,106 +43,139 @@ public class VaadinLiferayRequest extends VaadinHttpAndPortletRequest {
         return PropsUtil.get(name);
     }
 
+    @Override
+    protected HttpServletRequest getServletRequest(PortletRequest request) {
+        return getOriginalServletRequest(request);
+    }
+
     /**
-     * Simplified version of what Liferay PortalClassInvoker did. This is
-     * used because the API of PortalClassInvoker has changed in Liferay
-     * 6.2.
-     *
-     * This simply uses reflection with Liferay class loader. Parameters are
-     * Strings to avoid static dependencies and to load all classes with
-     * Liferay's own class loader. Only static utility methods are
-     * supported.
+     * Gets the original servlet request of a Liferay portlet request.
      *
-     * This method is for internal use only and may change in future
-     * versions.
-     *
-     * @param className
-     *         name of the Liferay class to call
-     * @param methodName
-     *         name of the method to call
-     * @param parameterClassName
-     *         name of the parameter class of the method
-     * @return return value of the invoked method
-     * @throws Exception
+     * @param request
+     *            the portlet request
+     * @return the original servlet request
+     * @throws IllegalStateException
+     *             if the request is not a Liferay request
      */
-    private Object invokeStaticLiferayMethod(String className,
-            String methodName, Object argument, String parameterClassName)
-            throws Exception {
-        Thread currentThread = Thread.currentThread();
-
-        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
-
+    static HttpServletRequest getOriginalServletRequest(
+            PortletRequest request) {
+        PortalAccess access = PortalAccess.INSTANCE;
         try {
-            // this should be available across all Liferay versions with no
-            // problematic static dependencies
-            ClassLoader portalClassLoader = PortalClassLoaderUtil
-                    .getClassLoader();
-            // this is in case the class loading triggers code that
-            // explicitly
-            // uses current thread class loader
-            currentThread.setContextClassLoader(portalClassLoader);
-
-            Class<?> targetClass = portalClassLoader.loadClass(className);
-            Class<?> parameterClass = portalClassLoader
-                    .loadClass(parameterClassName);
-            Method method = targetClass.getMethod(methodName, parameterClass);
-
-            return method.invoke(null, argument);
-        } catch (InvocationTargetException ite) {
-            throw (Exception) ite.getCause();
-        } finally {
-            currentThread.setContextClassLoader(contextClassLoader);
+            if (access.getLiferayPortletRequest != null) {
+                // Liferay 7.1+
+                Object liferayPortletRequest = (Object) access.getLiferayPortletRequest
+                        .invokeExact((Object) request);
+                return ((LiferayPortletRequest) liferayPortletRequest)
+                        .getOriginalHttpServletRequest();
+            }
+            if (access.getHttpServletRequest != null) {
+                // httpRequest = PortalUtil.getHttpServletRequest(request);
+                Object httpRequest = (Object) access.getHttpServletRequest
+                        .invokeExact((Object) request);
+                // httpRequest =
+                // PortalUtil.getOriginalServletRequest(httpRequest);
+                return (HttpServletRequest) (Object) access.getOriginalServletRequest
+                        .invokeExact(httpRequest);
+            }
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Liferay request not detected", e);
         }
+        throw new IllegalStateException("Liferay request not detected");
     }
 
-    @Override
-    protected HttpServletRequest getServletRequest(PortletRequest request) {
-        LiferayPortletRequest liferayPortletRequest = null;
-        if (portalUtilClass == null) {
+    /**
+     * Handles to the Liferay utility methods which give access to the
+     * original servlet request.
+     * <p>
+     * The Liferay version is detected and the methods are resolved once,
+     * when the first request needs them. The methods are looked up by name
+     * with Liferay's own class loader to avoid static dependencies on
+     * classes which differ between Liferay versions. All handles take and
+     * return {@code Object} so that they can be invoked exactly.
+     */
+    private static final class PortalAccess {
+
+        private static final PortalAccess INSTANCE = resolve();
+
+        private final MethodHandle getLiferayPortletRequest;
+        private final MethodHandle getHttpServletRequest;
+        private final MethodHandle getOriginalServletRequest;
+
+        private PortalAccess(MethodHandle getLiferayPortletRequest,
+                MethodHandle getHttpServletRequest,
+                MethodHandle getOriginalServletRequest) {
+            this.getLiferayPortletRequest = getLiferayPortletRequest;
+            this.getHttpServletRequest = getHttpServletRequest;
+            this.getOriginalServletRequest = getOriginalServletRequest;
+        }
+
+        private static PortalAccess resolve() {
+            Thread currentThread = Thread.currentThread();
+            ClassLoader contextClassLoader = currentThread
+                    .getContextClassLoader();
             try {
-                try {
-                    liferayPortletRequest = (LiferayPortletRequest) invokeStaticLiferayMethod(
-                            LIFERAY_7_PORTLET_UTIL, "getLiferayPortletRequest",
-                            request, PORTLET_REQUEST_CLASS);
-                    portalUtilClass = LIFERAY_7_PORTLET_UTIL;
-                    // Liferay 7.1+
-                } catch (Exception e) {
-                    // Liferay 7.0
-                    invokeStaticLiferayMethod(LIFERAY_7_PORTAL_UTIL,
-                            "getHttpServletRequest", request,
-                            PORTLET_REQUEST_CLASS);
-                    portalUtilClass = LIFERAY_7_PORTAL_UTIL;
+                // this should be available across all Liferay versions with
+                // no problematic static dependencies
+                ClassLoader portalClassLoader = PortalClassLoaderUtil
+                        .getClassLoader();
+                // this is in case the class loading triggers code that
+                // explicitly uses current thread class loader
+                currentThread.setContextClassLoader(portalClassLoader);
+
+                Class<?> portletRequestClass = portalClassLoader
+                        .loadClass(PORTLET_REQUEST_CLASS);
+                MethodHandle getLiferayPortletRequest = findStatic(
+                        portalClassLoader, LIFERAY_7_PORTLET_UTIL,
+                        "getLiferayPortletRequest", portletRequestClass);
+                if (getLiferayPortletRequest != null) {
+                    return new PortalAccess(getLiferayPortletRequest, null,
+                            null);
+                }
+                Class<?> httpServletRequestClass = portalClassLoader
+                        .loadClass(HTTP_SERVLET_REQUEST_CLASS);
+                // Liferay 7.0, then Liferay 6 or older
+                for (String portalUtil : new String[] { LIFERAY_7_PORTAL_UTIL,
+                        LIFERAY_6_PORTAL_UTIL }) {
+                    MethodHandle getHttpServletRequest = findStatic(
+                            portalClassLoader, portalUtil,
+                            "getHttpServletRequest", portletRequestClass);
+                    MethodHandle getOriginalServletRequest = findStatic(
+                            portalClassLoader, portalUtil,
+                            "getOriginalServletRequest",
+                            httpServletRequestClass);
+                    if (getHttpServletRequest != null
+                            && getOriginalServletRequest != null) {
+                        return new PortalAccess(null, getHttpServletRequest,
+                                getOriginalServletRequest);
+                    }
                 }
-            } catch (Exception e) {
-                // Liferay 6 or older
-                portalUtilClass = LIFERAY_6_PORTAL_UTIL;
+            } catch (ReflectiveOperationException | RuntimeException
+                    | LinkageError e) {
+                getLogger().debug("Liferay portal utilities not available",
+                        e);
+            } finally {
+                currentThread.setContextClassLoader(contextClassLoader);
             }
+            return new PortalAccess(null, null, null);
         }
-        try {
-            HttpServletRequest httpRequest;
-            if (liferayPortletRequest != null) {
-                return liferayPortletRequest.getOriginalHttpServletRequest();
-            } else if (portalUtilClass.equals(LIFERAY_7_PORTLET_UTIL)) {
-                liferayPortletRequest = (LiferayPortletRequest) invokeStaticLiferayMethod(
-                        portalUtilClass, "getLiferayPortletRequest", request,
-                        PORTLET_REQUEST_CLASS);
-                return liferayPortletRequest.getOriginalHttpServletRequest();
-            } else {
-                // httpRequest = PortalUtil.getHttpServletRequest(request);
-                httpRequest = (HttpServletRequest) invokeStaticLiferayMethod(
-                        portalUtilClass, "getHttpServletRequest", request,
-                        PORTLET_REQUEST_CLASS);
 
-                // httpRequest =
-                // PortalUtil.getOriginalServletRequest(httpRequest);
-                httpRequest = (HttpServletRequest) invokeStaticLiferayMethod(
-                        portalUtilClass, "getOriginalServletRequest",
-                        httpRequest, "javax.servlet.http.HttpServletRequest");
-                return httpRequest;
+        private static MethodHandle findStatic(ClassLoader classLoader,
+                String className, String methodName,
+                Class<?> parameterClass) {
+            try {
+                Method method = classLoader.loadClass(className)
+                        .getMethod(methodName, parameterClass);
+                return MethodHandles.publicLookup().unreflect(method).asType(
+                        MethodType.methodType(Object.class, Object.class));
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
             }
-
-        } catch (Exception e) {
-            throw new IllegalStateException("Liferay request not detected", e);
         }
     }
+
+    private static Logger getLogger() {
+        return LoggerFactory.getLogger(VaadinLiferayRequest.class.getName());
+    }
 }
@@ -10,7 +10,6 @@ package com.vaadin.flow.portal;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -23,7 +22,7 @@ import javax.portlet.EventResponse;
 import javax.portlet.GenericPortlet;
 import javax.portlet.HeaderRequest;
 import javax.portlet.HeaderResponse;
-import javax.portlet.PortalContext;
+import javax.portlet.MimeResponse;
 import javax.portlet.PortletConfig;
 import javax.portlet.PortletContext;
 import javax.portlet.PortletException;
@@ -46,7 +45,6 @@ import com.vaadin.flow.component.webcomponent.WebComponent;
 import com.vaadin.flow.function.DeploymentConfiguration;
 import com.vaadin.flow.function.SerializableRunnable;
 import com.vaadin.flow.internal.CurrentInstance;
-import com.vaadin.flow.internal.ReflectTools;
 import com.vaadin.flow.portal.lifecycle.PortletEvent;
 import com.vaadin.flow.router.PreserveOnRefresh;
 import com.vaadin.flow.server.Command;
@@ -56,6 +54,7 @@ import com.vaadin.flow.server.SessionExpiredException;
 import com.vaadin.flow.server.VaadinRequest;
 import com.vaadin.flow.server.VaadinService;
 import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.communication.WebComponentProvider;
 import com.vaadin.flow.shared.communication.PushMode;
 import com.vaadin.flow.shared.util.SharedUtil;
 
@@ -81,15 +80,21 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
 
     private VaadinPortletService vaadinService;
 
+    private PortletDescriptor descriptor;
+
+    private final String windowRegistryAttribute = PortletWindowRegistry
+            .getAttributeName(getClass());
+
+    private PortletViewContextLimits viewContextLimits;
+
     protected AtomicBoolean isPortlet3 = new AtomicBoolean();
 
     // @formatter:off
     /*
-     * The session currently stores a number of maps with the following keys:
-     *
-     * "<portlet class name>-<window name>-viewContext": namespace to view context
-     * "<portlet class name>-<window name>-mode": namespace to portlet mode
-     * "<portlet class name>-<window name>-windowState": namespace to window state
+     * The session stores one PortletWindowRegistry per portlet class under
+     * the key "<portlet class name>-windows". It maps each (window name,
+     * namespace) pair to the view context holding the mode and window state
+     * of that view.
      *
      *   VaadinPortletSession(1)   VaadinPortletSession(2)
      *              V                       V
@@ -127,11 +132,11 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
      * view instances. Each view instance has its own mode and window state.
      */
     // @formatter:on
-    private static final String VIEW_CONTEXT_SESSION_SUBKEY = "viewContext";
 
-    private static final String WEB_COMPONENT_PROVIDER_URL_SUBKEY = "webComponentProviderURL";
-    private static final String WEB_COMPONENT_BOOTSTRAP_HANDLER_URL_SUBKEY = "webComponentBootstrapHandlerURL";
-    private static final String WEB_COMPONENT_UIDL_REQUEST_HANDLER_URL_SUBKEY = "webComponentUidlRequestHandlerURL";
+    private static final String WEB_COMPONENT_BOOTSTRAP_HANDLER_ID = "/web-component/web-component-ui.js";
+    private static final String WEB_COMPONENT_UIDL_REQUEST_HANDLER_ID = "/uidl";
+    private static final String WEB_COMPONENT_PROVIDER_URL_ATTRIBUTE = VaadinPortlet.class
+            .getName() + ".providerUrl";
 
     /**
      * Portlet component exporter.
@@ -169,9 +174,13 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
 
         @Override
         protected Class<C> getComponentClass() {
-            return (Class<C>) ReflectTools.getGenericInterfaceType(
-                    VaadinPortlet.this.getClass(),
-                    WebComponentExporterFactory.class);
+            // The exporter may be created for a portlet instance which has
+            // not been initialized by the portlet container
+            PortletDescriptor portletDescriptor = descriptor;
+            return (Class<C>) (portletDescriptor != null
+                    ? portletDescriptor.getComponentClass()
+                    : PortletDescriptor.resolveComponentClass(
+                            VaadinPortlet.this.getClass()));
         }
 
         protected void initComponent(C component) {
@@ -194,6 +203,10 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
         // Sets current service even though there are no request and response
         VaadinService.setCurrent(null);
 
+        descriptor = PortletDescriptor.create(this);
+        viewContextLimits = PortletViewContextLimits
+                .create(deploymentConfiguration);
+
         portletInitialized();
 
         CurrentInstance.clearAll();
@@ -231,23 +244,74 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
             throws PortletException, IOException {
         // This is only called for portlet 3.0 portlets.
         // NOTE: Liferay 7.3.x seems to not call this for VaadinPortlets
-        isPortlet3.set(true);
+        markPortlet3();
         response.addDependency("PortletHub", "javax.portlet", "3.0.0");
 
         response.getWriter().println(
                 getPortletScriptTag(request, "scripts/PortletMethods.js"));
+        writePreloadHints(request, response);
+    }
+
+    /**
+     * Writes preload hints for the scripts which the render fragment loads,
+     * so that the browser can fetch them while the rest of the portal page is
+     * still loading.
+     * <p>
+     * Only the web component provider script has a URL which is known
+     * before the render: the Flow client bundle is referenced by the
+     * bootstrap response of the web component UI. The URL is stored on the
+     * request so that the render phase loads the script from the very URL
+     * which was preloaded.
+     *
+     * @param request
+     *            the header phase request
+     * @param response
+     *            the header phase response to write the hints to
+     * @throws IOException
+     *             if the hints can't be written
+     */
+    void writePreloadHints(PortletRequest request, MimeResponse response)
+            throws IOException {
+        PortletDescriptor portletDescriptor = getDescriptor();
+        if (portletDescriptor.isInlineBootstrap()
+                || portletDescriptor.isLazyBootstrap()) {
+            // the provider script is either inlined or loaded on demand
+            return;
+        }
+        String scriptUrl = (String) getPortletContext()
+                .getAttribute(WebComponentProvider.class.getName());
+        if (scriptUrl == null) {
+            scriptUrl = getWebComponentProviderURL(request,
+                    new VaadinPortletResponse(response, getService()));
+        }
+        response.getWriter().println("<link rel=\"preload\" href=\""
+                + scriptUrl + "\" as=\"script\">");
     }
 
     protected String getPortletScriptTag(RenderRequest request,
             String filePath) {
+        return "<script src=\"" + getPortletScriptUrl(request, filePath)
+                + "\" type=\"text/javascript\"></script>";
+    }
+
+    /**
+     * Gets the URL of the given portlet static script file.
+     *
+     * @param request
+     *            the current render request
+     * @param filePath
+     *            the path of the script relative to the static resources
+     *            path
+     * @return the URL of the script
+     */
+    String getPortletScriptUrl(RenderRequest request, String filePath) {
         // static bundle or context path?
         // latter is more lenient for old projects, former is less friendly to caching
         // current implementation uses portlet context to load the portlet
         // methods JS file and Liferay implementation uses static bundle
-        String scriptSrc = getServerUrl(request) + getStaticResourcesPath()
-                + filePath;
-        return "<script src=\"" + scriptSrc
-                + "\" type=\"text/javascript\"></script>";
+        return getServerUrl(request)
+                .append(getDescriptor().getStaticResourcesPath())
+                .append(filePath).toString();
     }
 
     protected String getStaticResourcesPath() {
@@ -261,14 +325,30 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
         return "/";
     }
 
-    private static String getServerUrl(RenderRequest req) {
+    private static StringBuilder getServerUrl(RenderRequest req) {
         int port = req.getServerPort();
         String scheme = req.getScheme();
-        boolean isDefaultPort = (scheme == "http" && port == 80)
-                || (scheme == "https" && port == 443);
+        boolean isDefaultPort = ("http".equals(scheme) && port == 80)
+                || ("https".equals(scheme) && port == 443);
 
-        return String.format("%s://%s%s", scheme, req.getServerName(),
-                (isDefaultPort ? "" : ":" + port));
+        StringBuilder url = new StringBuilder(128).append(scheme)
+                .append("://").append(req.getServerName());
+        if (!isDefaultPort) {
+            url.append(':').append(port);
+        }
+        return url;
+    }
+
+    /**
+     * Marks the portlet as a Portlet 3.0 portlet.
+     * <p>
+     * The flag is only written when it changes so that it stays read-only
+     * once it has been set.
+     */
+    void markPortlet3() {
+        if (!isPortlet3.get()) {
+            isPortlet3.set(true);
+        }
     }
 
     @Override
@@ -312,21 +392,18 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
      * @param request
      *            The original PortletRequest
      * @return A wrapped version of the PortletRequest
+     * @see PortalAdapter#createRequest(PortletRequest, VaadinPortletService)
      */
     protected VaadinPortletRequest createVaadinRequest(PortletRequest request) {
-        PortalContext portalContext = request.getPortalContext();
-        String portalInfo = portalContext.getPortalInfo()
-                .toLowerCase(Locale.ROOT).trim();
         VaadinPortletService service = getService();
-        if (portalInfo.contains("liferay")) {
-            return new VaadinLiferayRequest(request, service);
-        }
-        return new VaadinPortletRequest(request, service);
+        return service.getPortalAdapter(request).createRequest(request,
+                service);
     }
 
     private VaadinPortletResponse createVaadinResponse(
             PortletResponse response) {
-        return new VaadinPortletResponse(response, getService());
+        VaadinPortletService service = getService();
+        return service.getPortalAdapter().createResponse(response, service);
     }
 
     @Override
@@ -458,6 +535,20 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
         }
     }
 
+    /**
+     * Gets the descriptor of the portlet created when the portlet was
+     * initialized.
+     *
+     * @return the portlet descriptor
+     */
+    PortletDescriptor getDescriptor() {
+        if (descriptor == null) {
+            // portlet has not gone through init(), e.g. in tests
+            descriptor = PortletDescriptor.create(this);
+        }
+        return descriptor;
+    }
+
     private String deriveTagName(String candidate) {
         String result = SharedUtil.camelCaseToDashSeparated(candidate)
                 .replaceFirst("^-", "");
@@ -467,45 +558,37 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
         return result;
     }
 
-    void setWebComponentProviderURL(VaadinSession session, String namespace,
-            String url) {
-        session.checkHasLock();
-        setSessionAttribute(session, namespace,
-                WEB_COMPONENT_PROVIDER_URL_SUBKEY, url);
-    }
-
-    String getWebComponentProviderURL(VaadinSession session, String namespace) {
-        session.checkHasLock();
-        return getSessionAttribute(session, namespace,
-                WEB_COMPONENT_PROVIDER_URL_SUBKEY);
-    }
-
-    void setWebComponentBootstrapHandlerURL(VaadinSession session,
-            String namespace, String url) {
-        session.checkHasLock();
-        setSessionAttribute(session, namespace,
-                WEB_COMPONENT_BOOTSTRAP_HANDLER_URL_SUBKEY, url);
+    // The bootstrap URLs are derived from the current response instead of
+    // being stored in the session: a resource URL always addresses the
+    // portlet window of the response it was created by.
+    // The header and render phases of a portlet window share the provider
+    // script URL through the request: a preload hint only helps if the
+    // script tag uses the same URL.
+    String getWebComponentProviderURL(PortletRequest request,
+            VaadinPortletResponse response) {
+        String url = (String) request
+                .getAttribute(WEB_COMPONENT_PROVIDER_URL_ATTRIBUTE);
+        if (url == null) {
+            url = getWebComponentProviderURL(response);
+            request.setAttribute(WEB_COMPONENT_PROVIDER_URL_ATTRIBUTE, url);
+        }
+        return url;
     }
 
-    String getWebComponentBootstrapHandlerURL(VaadinSession session,
-            String namespace) {
-        session.checkHasLock();
-        return getSessionAttribute(session, namespace,
-                WEB_COMPONENT_BOOTSTRAP_HANDLER_URL_SUBKEY);
+    String getWebComponentProviderURL(VaadinPortletResponse response) {
+        PortletDescriptor portletDescriptor = getDescriptor();
+        return response.createCacheableResourceURL(
+                "/web-component/" + portletDescriptor.getTag() + ".js",
+                portletDescriptor.getProviderScriptVersion());
     }
 
-    void setWebComponentUIDLRequestHandlerURL(VaadinSession session,
-            String namespace, String url) {
-        session.checkHasLock();
-        setSessionAttribute(session, namespace,
-                WEB_COMPONENT_UIDL_REQUEST_HANDLER_URL_SUBKEY, url);
+    String getWebComponentBootstrapHandlerURL(VaadinPortletResponse response) {
+        return response.createResourceURL(WEB_COMPONENT_BOOTSTRAP_HANDLER_ID);
     }
 
-    String getWebComponentUIDLRequestHandlerURL(VaadinSession session,
-            String namespace) {
-        session.checkHasLock();
-        return getSessionAttribute(session, namespace,
-                WEB_COMPONENT_UIDL_REQUEST_HANDLER_URL_SUBKEY);
+    String getWebComponentUIDLRequestHandlerURL(
+            VaadinPortletResponse response) {
+        return response.createResourceURL(WEB_COMPONENT_UIDL_REQUEST_HANDLER_ID);
     }
 
     private VaadinPortletSession getSession(PortletRequest request,
@@ -524,54 +607,44 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
         }
     }
 
-    @SuppressWarnings("unchecked")
     private PortletViewContext getViewContext(VaadinSession session,
             String namespace, String windowName) throws PortletException {
-        Map<String, PortletViewContext> viewContexts = (Map<String, PortletViewContext>) session
-                .getAttribute(getSessionWindowAttributeKey(windowName,
-                        VIEW_CONTEXT_SESSION_SUBKEY));
-        if (viewContexts != null) {
-            if (!viewContexts.containsKey(namespace)) {
-                throw new PortletException(
-                        "view not initialized for namespace " + namespace);
-            }
-            return viewContexts.get(namespace);
-        } else {
+        PortletWindowRegistry registry = PortletWindowRegistry.get(session,
+                windowRegistryAttribute, false);
+        if (registry == null) {
             return null;
         }
+        PortletViewContext context = registry.getViewContext(windowName,
+                namespace, getViewContextLimits());
+        if (context == null && registry.hasWindow(windowName)) {
+            throw new PortletException(
+                    "view not initialized for namespace " + namespace);
+        }
+        return context;
     }
 
     private void setViewContext(VaadinSession session, String namespace,
             String windowName, PortletViewContext context) {
-        setSessionAttribute(session, namespace,
-                windowName + "-" + VIEW_CONTEXT_SESSION_SUBKEY, context);
+        PortletWindowRegistry.get(session, windowRegistryAttribute, true)
+                .setViewContext(windowName, namespace, context,
+                        getViewContextLimits());
     }
 
-    private <T> void setSessionAttribute(VaadinSession session,
-            String namespace, String subKey, T value) {
-        Map<String, T> map = (Map<String, T>) session
-                .getAttribute(getSessionAttributeKey(subKey));
-        if (map == null) {
-            map = new HashMap<>();
-            session.setAttribute(getSessionAttributeKey(subKey), map);
+    private void bindViewContext(VaadinSession session, String namespace,
+            String windowName, UI ui) {
+        PortletWindowRegistry registry = PortletWindowRegistry.get(session,
+                windowRegistryAttribute, false);
+        if (registry != null) {
+            registry.bindToUI(windowName, namespace, ui);
         }
-        map.put(namespace, value);
-    }
-
-    private <T> T getSessionAttribute(VaadinSession session, String namespace,
-            String subKey) {
-        Map<String, T> map = (Map<String, T>) session
-                .getAttribute(getSessionAttributeKey(subKey));
-        return map != null ? map.get(namespace) : null;
     }
 
-    private String getSessionAttributeKey(String subKey) {
-        return getClass().getName() + "-" + subKey;
-    }
-
-    private String getSessionWindowAttributeKey(String windowName,
-            String subKey) {
-        return getSessionAttributeKey(windowName + "-" + subKey);
+    private PortletViewContextLimits getViewContextLimits() {
+        if (viewContextLimits == null) {
+            // portlet has not gone through init(), e.g. in tests
+            viewContextLimits = PortletViewContextLimits.create(null);
+        }
+        return viewContextLimits;
     }
 
     private void firePortletEvent(VaadinPortletSession session,
@@ -646,6 +719,8 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
                     request.getPortletMode(), request.getWindowState());
             portlet.setViewContext(session, namespace, windowName, context);
         }
+        // the view context is evicted when the UI showing the view is gone
+        portlet.bindViewContext(session, namespace, windowName, ui);
         context.init();
         context.updateModeAndState(request.getPortletMode(),
                 request.getWindowState());
@@ -655,12 +730,15 @@ public abstract class VaadinPortlet<C extends Component> extends GenericPortlet
         }
     }
 
-    // By default, portlet registration instruction can be sent to the client
-    // as is, but some portlet containers (e.g. Liferay) may need to wrap or
-    // enhance it with more instructions.
+    // By default, the portal adapter decides how the portlet registration
+    // instruction is sent to the client, but portlets for some portal
+    // versions (e.g. Liferay 7.2+) may need to wrap or enhance it with more
+    // instructions. The script URL is null when the web component provider
+    // script has been inlined into the response.
     String portletElementRegistrationScript(VaadinRequest request,
             String scriptUrl, String registrationInstruction) {
-        return registrationInstruction;
+        return getService().getPortalAdapter().getRegistrationScript(request,
+                scriptUrl, registrationInstruction);
     }
 
 }
@@ -17,7 +17,9 @@ import javax.portlet.filter.PortletRequestWrapper;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.ParseException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Enumeration;
 
 import com.vaadin.flow.server.VaadinRequest;
@@ -38,6 +40,15 @@ public class VaadinPortletRequest extends PortletRequestWrapper
     private static final String HOST_HTTP_HEADER_NAME = "host";
     private static final String SCHEME_HTTP_HEADER_NAME = "scheme";
 
+    // The capabilities of the request depend only on the portlet phase, so
+    // they are resolved once instead of casting on every call
+    private final ClientDataRequest clientDataRequest;
+    private final ResourceRequest resourceRequest;
+    private final String pathInfo;
+
+    private String windowId;
+    private WrappedPortletSession wrappedSession;
+
     /**
      * Wraps a portlet request and an associated vaadin service.
      *
@@ -50,48 +61,46 @@ public class VaadinPortletRequest extends PortletRequestWrapper
             VaadinPortletService vaadinService) {
         super(request);
         this.vaadinService = vaadinService;
+        clientDataRequest = request instanceof ClientDataRequest
+                ? (ClientDataRequest) request
+                : null;
+        resourceRequest = request instanceof ResourceRequest
+                ? (ResourceRequest) request
+                : null;
+        pathInfo = resourceRequest == null ? null
+                : resourceRequest.getResourceID();
     }
 
     @Override
     public int getContentLength() {
-        try {
-            return ((ClientDataRequest) getRequest()).getContentLength();
-        } catch (ClassCastException e) {
-            throw new IllegalStateException(
-                    "Content length only available for ClientDataRequests");
-        }
+        return getClientDataRequest("Content length").getContentLength();
+    }
+
+    /**
+     * Gets the length of the request body, which may exceed
+     * {@link Integer#MAX_VALUE}.
+     *
+     * @return the content length, or {@code -1} if not known
+     * @throws IllegalStateException
+     *             if the request is not a {@link ClientDataRequest}
+     */
+    long getContentLengthLong() {
+        return getClientDataRequest("Content length").getContentLengthLong();
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
-        try {
-            return ((ClientDataRequest) getRequest()).getPortletInputStream();
-        } catch (ClassCastException e) {
-            throw new IllegalStateException(
-                    "Input data only available for ClientDataRequests");
-        }
+        return getClientDataRequest("Input data").getPortletInputStream();
     }
 
     @Override
     public BufferedReader getReader() throws IOException {
-        try {
-            return ((ClientDataRequest) getRequest()).getReader();
-        } catch (ClassCastException e) {
-            throw new IllegalStateException(
-                    "Reader only available for ClientDataRequests");
-        }
+        return getClientDataRequest("Reader").getReader();
     }
 
     @Override
     public String getPathInfo() {
-        PortletRequest request = getRequest();
-        if (request instanceof ResourceRequest) {
-            ResourceRequest resourceRequest = (ResourceRequest) request;
-            String resourceID = resourceRequest.getResourceID();
-            return resourceID;
-        } else {
-            return null;
-        }
+        return pathInfo;
     }
 
     @Override
@@ -102,11 +111,38 @@ public class VaadinPortletRequest extends PortletRequestWrapper
     @Override
     public WrappedSession getWrappedSession(boolean allowSessionCreation) {
         PortletSession session = getPortletSession(allowSessionCreation);
-        if (session != null) {
-            return new WrappedPortletSession(session);
-        } else {
+        if (session == null) {
             return null;
         }
+        // the portlet session changes if it is invalidated during the request
+        if (wrappedSession == null
+                || wrappedSession.getPortletSession() != session) {
+            wrappedSession = new WrappedPortletSession(session);
+        }
+        return wrappedSession;
+    }
+
+    /**
+     * Checks whether the request carries client data, i.e. whether it is an
+     * action or a resource request.
+     *
+     * @return {@code true} if the wrapped request is a
+     *         {@link ClientDataRequest}
+     */
+    boolean isClientDataRequest() {
+        return clientDataRequest != null;
+    }
+
+    /**
+     * Gets the window ID of the portlet request.
+     *
+     * @return the window ID
+     */
+    String getWindowID() {
+        if (windowId == null) {
+            windowId = getRequest().getWindowID();
+        }
+        return windowId;
     }
 
     /**
@@ -120,32 +156,22 @@ public class VaadinPortletRequest extends PortletRequestWrapper
 
     @Override
     public String getContentType() {
-        try {
-            return ((ResourceRequest) getRequest()).getContentType();
-        } catch (ClassCastException e) {
+        if (resourceRequest == null) {
             throw new IllegalStateException(
                     "Content type only available for ResourceRequests");
         }
+        return resourceRequest.getContentType();
     }
 
     @Override
     public String getCharacterEncoding() {
-        try {
-            return ((ClientDataRequest) getRequest()).getCharacterEncoding();
-        } catch (ClassCastException e) {
-            throw new IllegalStateException(
-                    "Character encoding only available for ClientDataRequest");
-        }
+        return getClientDataRequest("Character encoding")
+                .getCharacterEncoding();
     }
 
     @Override
     public String getMethod() {
-        try {
-            return ((ClientDataRequest) getRequest()).getMethod();
-        } catch (ClassCastException e) {
-            throw new IllegalStateException(
-                    "Method only available for ClientDataRequest");
-        }
+        return getClientDataRequest("Method").getMethod();
     }
 
     @Override
@@ -171,8 +197,9 @@ public class VaadinPortletRequest extends PortletRequestWrapper
         if (SCHEME_HTTP_HEADER_NAME.equalsIgnoreCase(headerName)) {
             return getScheme();
         }
-
-        return null;
+        // Portlet containers expose the HTTP request headers as request
+        // properties
+        return getRequest().getProperty(headerName);
     }
 
     /**
@@ -215,9 +242,8 @@ public class VaadinPortletRequest extends PortletRequestWrapper
             return -1;
         } else {
             try {
-                return VaadinPortletResponse.HTTP_DATE_FORMAT.parse(header)
-                        .getTime();
-            } catch (ParseException e) {
+                return parseRfc1123(header);
+            } catch (DateTimeParseException e) {
                 throw new IllegalArgumentException(e);
             }
         }
@@ -225,12 +251,45 @@ public class VaadinPortletRequest extends PortletRequestWrapper
 
     @Override
     public Enumeration<String> getHeaderNames() {
-        return null;
+        return getRequest().getPropertyNames();
     }
 
     @Override
     public Enumeration<String> getHeaders(String name) {
-        return null;
+        return getRequest().getProperties(name);
+    }
+
+    private ClientDataRequest getClientDataRequest(String feature) {
+        if (clientDataRequest == null) {
+            throw new IllegalStateException(
+                    feature + " only available for ClientDataRequests");
+        }
+        return clientDataRequest;
+    }
+
+    /**
+     * Parses the given HTTP date header value.
+     *
+     * @param value
+     *            the header value, may be {@code null}
+     * @return the date in milliseconds since the epoch, or {@code -1} if the
+     *         value is missing or isn't a valid HTTP date
+     */
+    static long parseHttpDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return parseRfc1123(value);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static long parseRfc1123(String value) {
+        return ZonedDateTime
+                .parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                .toInstant().toEpochMilli();
     }
 
     /**
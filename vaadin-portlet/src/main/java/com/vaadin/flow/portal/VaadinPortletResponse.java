@@ -12,15 +12,22 @@ import javax.portlet.MimeResponse;
 import javax.portlet.PortletRequest;
 import javax.portlet.PortletResponse;
 import javax.portlet.ResourceResponse;
+import javax.portlet.ResourceURL;
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
-import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
 
 import com.vaadin.flow.server.VaadinResponse;
 
@@ -33,16 +40,42 @@ import com.vaadin.flow.server.VaadinResponse;
  * @since
  */
 public class VaadinPortletResponse implements VaadinResponse {
-    static final DateFormat HTTP_DATE_FORMAT = new SimpleDateFormat(
-            "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+    private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
 
-    static {
-        HTTP_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
+    private static final String NO_CACHE = "no-cache";
+    private static final String EXPIRED = HTTP_DATE_FORMAT
+            .format(Instant.EPOCH);
+
+    private static final int BUFFER_SIZE = 8192;
 
     private final PortletResponse response;
     private final VaadinPortletService vaadinService;
 
+    // Resource URL template, derived from the first two URLs created by the
+    // portal. A null prefix means that the URLs are created through the
+    // portal API.
+    private boolean resourceUrlTemplateResolved;
+    private String templateResourceId;
+    private String templateResourceUrl;
+    private String resourceUrlPrefix;
+    private String resourceUrlSuffix;
+    private boolean encodeResourceId;
+    // Characters besides the unreserved ones whose encoding in the template
+    // has been checked against the portal
+    private String verifiedResourceIdChars;
+
+    // Compression state of a resource response. The body is buffered until
+    // it exceeds the threshold so that small bodies are sent as they are.
+    private Boolean compressionAccepted;
+    private boolean compressionDisabled;
+    private String contentType;
+    private int contentLength = -1;
+    private String etag;
+    private CompressingOutputStream compressingStream;
+    private PrintWriter compressingWriter;
+
     /**
      * Wraps a portlet response and an associated vaadin service.
      *
@@ -59,8 +92,18 @@ public class VaadinPortletResponse implements VaadinResponse {
 
     @Override
     public OutputStream getOutputStream() throws IOException {
+        if (compressingStream != null) {
+            return compressingStream;
+        }
         if (response instanceof MimeResponse) {
-            return ((MimeResponse) response).getPortletOutputStream();
+            OutputStream stream = ((MimeResponse) response)
+                    .getPortletOutputStream();
+            if (isCompressionAccepted()) {
+                compressingStream = new CompressingOutputStream(stream,
+                        vaadinService.getCompression().getThreshold());
+                return compressingStream;
+            }
+            return stream;
         } else {
             throw new IOException(
                     "Output stream not available for response of type "
@@ -77,10 +120,220 @@ public class VaadinPortletResponse implements VaadinResponse {
         return response;
     }
 
+    /**
+     * Creates a URL to the resource with the given ID in the current portlet
+     * window.
+     * <p>
+     * Generating resource URLs is expensive in some portals (e.g. Liferay,
+     * see {@link PortalAdapter#isResourceUrlTemplateSupported()}).
+     * There the first resource URL of the response is kept as a template
+     * candidate. When the second URL is created by the portal, the template
+     * is verified against it and the following URLs are derived from the
+     * template by substituting the resource ID. No URLs are created only for
+     * deriving the template, and the portal API is used whenever the
+     * template can't be trusted. Portals may encode characters differently
+     * from {@link URLEncoder}, so the template is only used for IDs made of
+     * unreserved characters and of the characters of the IDs which the
+     * template has been checked with.
+     *
+     * @param resourceId
+     *            the resource ID
+     * @return the resource URL
+     */
+    String createResourceURL(String resourceId) {
+        if (resourceUrlPrefix != null) {
+            if (isTemplateApplicable(resourceId)) {
+                return applyResourceUrlTemplate(resourceId);
+            }
+            return createPortalResourceURL(resourceId);
+        }
+        String url = createPortalResourceURL(resourceId);
+        if (!resourceUrlTemplateResolved) {
+            if (vaadinService == null || !vaadinService.getPortalAdapter()
+                    .isResourceUrlTemplateSupported()) {
+                resourceUrlTemplateResolved = true;
+            } else if (templateResourceId == null) {
+                // An ID which changes when encoded tells whether the portal
+                // encodes the IDs in the URLs
+                if (!encode(resourceId).equals(resourceId)) {
+                    templateResourceId = resourceId;
+                    templateResourceUrl = url;
+                }
+            } else if (!templateResourceId.equals(resourceId)) {
+                resourceUrlTemplateResolved = true;
+                resolveResourceUrlTemplate(resourceId, url);
+                templateResourceId = null;
+                templateResourceUrl = null;
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Creates a URL to the resource with the given ID which may be cached by
+     * the browser and by the portal: the URL has
+     * {@link ResourceURL#FULL FULL} cacheability and carries the given
+     * {@code version} so that it changes whenever the resource does.
+     *
+     * @param resourceId
+     *            the resource ID
+     * @param version
+     *            the version of the resource
+     * @return the resource URL
+     */
+    String createCacheableResourceURL(String resourceId, String version) {
+        ResourceURL url = ((MimeResponse) response).createResourceURL();
+        url.setCacheability(ResourceURL.FULL);
+        url.setResourceID(resourceId);
+        url.getResourceParameters().setValue("v", version);
+        return url.toString();
+    }
+
+    private void resolveResourceUrlTemplate(String resourceId, String url) {
+        String template = templateResourceUrl;
+        String marker = templateResourceId;
+        int index = template.indexOf(marker);
+        if (index >= 0) {
+            encodeResourceId = false;
+        } else {
+            marker = encode(templateResourceId);
+            index = template.indexOf(marker);
+            encodeResourceId = true;
+        }
+        if (index < 0 || template.indexOf(marker, index + 1) >= 0) {
+            return;
+        }
+        resourceUrlPrefix = template.substring(0, index);
+        resourceUrlSuffix = template.substring(index + marker.length());
+        if (!url.equals(applyResourceUrlTemplate(resourceId))) {
+            // The portal encodes resource IDs in some other way or adds
+            // varying parts to the URLs
+            resourceUrlPrefix = null;
+            resourceUrlSuffix = null;
+            return;
+        }
+        StringBuilder verified = new StringBuilder();
+        (templateResourceId + resourceId).chars()
+                .filter(c -> !isUnreserved((char) c)
+                        && verified.indexOf(String.valueOf((char) c)) < 0)
+                .forEach(c -> verified.append((char) c));
+        verifiedResourceIdChars = verified.toString();
+    }
+
+    private boolean isTemplateApplicable(String resourceId) {
+        for (int i = 0; i < resourceId.length(); i++) {
+            char c = resourceId.charAt(i);
+            if (!isUnreserved(c) && verifiedResourceIdChars.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // '~' is left out, as URLEncoder encodes it unlike many portals
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_';
+    }
+
+    private String applyResourceUrlTemplate(String resourceId) {
+        String id = encodeResourceId ? encode(resourceId) : resourceId;
+        return new StringBuilder(resourceUrlPrefix.length() + id.length()
+                + resourceUrlSuffix.length()).append(resourceUrlPrefix)
+                        .append(id).append(resourceUrlSuffix).toString();
+    }
+
+    private String createPortalResourceURL(String resourceId) {
+        ResourceURL url = ((MimeResponse) response).createResourceURL();
+        url.setResourceID(resourceId);
+        return url.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether the body of this response may be gzip-compressed: the
+     * response is a resource response, compression is enabled and the client
+     * accepts it.
+     *
+     * @return {@code true} if the body may be compressed
+     */
+    boolean isCompressionAccepted() {
+        if (compressionDisabled) {
+            return false;
+        }
+        if (compressionAccepted == null) {
+            VaadinPortletRequest request = VaadinPortletService
+                    .getCurrentRequest();
+            compressionAccepted = isCompressionEnabled() && request != null
+                    && PortletCompression
+                            .acceptsGzip(request.getHeader("Accept-Encoding"));
+        }
+        return compressionAccepted;
+    }
+
+    /**
+     * Gets the minimum size of a body to compress. Only available when
+     * {@link #isCompressionAccepted() compression is accepted}.
+     *
+     * @return the threshold in bytes
+     */
+    int getCompressionThreshold() {
+        return vaadinService.getCompression().getThreshold();
+    }
+
+    /**
+     * Marks the body of this response as gzip-compressed by the caller. The
+     * response doesn't compress the body again, and a strong {@code ETag}
+     * declared for the uncompressed body is made weak, since the compressed
+     * body is not byte-for-byte the same.
+     */
+    void setGzipEncoded() {
+        compressionDisabled = true;
+        response.setProperty("Content-Encoding", "gzip");
+        if (etag != null && !etag.startsWith("W/")) {
+            response.setProperty("ETag", "W/" + etag);
+        }
+    }
+
+    private boolean isCompressionEnabled() {
+        if (!(response instanceof ResourceResponse) || vaadinService == null) {
+            return false;
+        }
+        PortletCompression compression = vaadinService.getCompression();
+        return compression != null && compression.isEnabled();
+    }
+
+    /**
+     * Completes the compressed body of this response, if it is compressed.
+     * Called when the request has been handled, since request handlers don't
+     * necessarily close the output stream.
+     *
+     * @throws IOException
+     *             if writing the body fails
+     */
+    void finishCompression() throws IOException {
+        if (compressingWriter != null) {
+            compressingWriter.flush();
+        }
+        if (compressingStream != null) {
+            compressingStream.finish();
+        }
+    }
+
     @Override
     public void setContentType(String type) {
+        contentType = type;
         if (response instanceof MimeResponse) {
             ((MimeResponse) response).setContentType(type);
+            if (PortletCompression.isCompressible(type)
+                    && isCompressionEnabled()) {
+                // caches must not serve a compressed body to clients which
+                // don't accept it, nor the other way around
+                response.setProperty("Vary", "Accept-Encoding");
+            }
         } else {
             throw new VaadinPortletException(
                     "Content type cannot be set for response of type "
@@ -90,6 +343,17 @@ public class VaadinPortletResponse implements VaadinResponse {
 
     @Override
     public void setContentLength(int len) {
+        if (isCompressionAccepted()) {
+            if (compressingStream == null || compressingStream.out == null) {
+                // applied once it is known whether the body is compressed
+                contentLength = len;
+                return;
+            }
+            if (compressingStream.out != compressingStream.target) {
+                // the length of a compressed body isn't known in advance
+                return;
+            }
+        }
         if (response instanceof ResourceResponse) {
             ((ResourceResponse) response).setContentLength(len);
         }
@@ -98,6 +362,16 @@ public class VaadinPortletResponse implements VaadinResponse {
 
     @Override
     public PrintWriter getWriter() throws IOException {
+        if (compressingWriter != null) {
+            return compressingWriter;
+        }
+        if (response instanceof MimeResponse && isCompressionAccepted()) {
+            String encoding = ((MimeResponse) response).getCharacterEncoding();
+            compressingWriter = new PrintWriter(new OutputStreamWriter(
+                    getOutputStream(), encoding == null ? StandardCharsets.UTF_8
+                            : Charset.forName(encoding)));
+            return compressingWriter;
+        }
         if (response instanceof MimeResponse) {
             return ((MimeResponse) response).getWriter();
         } else {
@@ -109,28 +383,49 @@ public class VaadinPortletResponse implements VaadinResponse {
 
     @Override
     public void setStatus(int responseStatus) {
+        if (responseStatus != HttpServletResponse.SC_OK) {
+            // partial, empty and error bodies are sent as they are
+            compressionDisabled = true;
+        }
         response.setProperty(ResourceResponse.HTTP_STATUS_CODE,
                 Integer.toString(responseStatus));
     }
 
     @Override
     public void setHeader(String name, String value) {
+        if ("Content-Encoding".equalsIgnoreCase(name)
+                || "Content-Range".equalsIgnoreCase(name)) {
+            compressionDisabled = true;
+        } else if ("ETag".equalsIgnoreCase(name)) {
+            etag = value;
+        }
         response.setProperty(name, value);
     }
 
     @Override
     public void setDateHeader(String name, long timestamp) {
-        response.setProperty(name,
-                HTTP_DATE_FORMAT.format(new Date(timestamp)));
+        response.setProperty(name, formatHttpDate(timestamp));
+    }
+
+    /**
+     * Formats the given timestamp as an HTTP date, e.g.
+     * {@code Tue, 15 Nov 1994 08:12:31 GMT}. Safe to call from any thread.
+     *
+     * @param timestamp
+     *            the timestamp in milliseconds since the epoch
+     * @return the formatted date
+     */
+    static String formatHttpDate(long timestamp) {
+        return HTTP_DATE_FORMAT
+                .format(Instant.ofEpochSecond(Math.floorDiv(timestamp, 1000)));
     }
 
     @Override
     public void setCacheTime(long milliseconds) {
-        // FIXME This is copy paste
         if (milliseconds <= 0) {
-            setHeader("Cache-Control", "no-cache");
-            setHeader("Pragma", "no-cache");
-            setDateHeader("Expires", 0);
+            setHeader("Cache-Control", NO_CACHE);
+            setHeader("Pragma", NO_CACHE);
+            setHeader("Expires", EXPIRED);
         } else {
             setHeader("Cache-Control", "max-age=" + milliseconds / 1000);
             setDateHeader("Expires", System.currentTimeMillis() + milliseconds);
@@ -192,6 +487,88 @@ public class VaadinPortletResponse implements VaadinResponse {
         response.addProperty(cookie);
     }
 
+    /**
+     * Output stream which gzip-compresses the body once it exceeds the
+     * threshold, provided that the content type is compressible and the
+     * response hasn't been marked as not compressible in the meanwhile.
+     */
+    private final class CompressingOutputStream extends OutputStream {
+
+        private final OutputStream target;
+        private final int threshold;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream out;
+        private boolean finished;
+
+        private CompressingOutputStream(OutputStream target, int threshold) {
+            this.target = target;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException {
+            if (out == null) {
+                if (buffer.size() + length <= threshold) {
+                    buffer.write(bytes, offset, length);
+                    return;
+                }
+                start(true);
+            }
+            out.write(bytes, offset, length);
+        }
+
+        private void start(boolean large) throws IOException {
+            if (large && !compressionDisabled
+                    && PortletCompression.isCompressible(contentType)) {
+                setGzipEncoded();
+                out = new GZIPOutputStream(target, BUFFER_SIZE);
+            } else {
+                if (contentLength >= 0) {
+                    ((ResourceResponse) response)
+                            .setContentLength(contentLength);
+                }
+                out = target;
+            }
+            buffer.writeTo(out);
+            buffer = null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // a buffered body is kept until it is known whether it gets
+            // compressed
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (out == null) {
+                start(false);
+            }
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            target.close();
+        }
+    }
+
     /**
      * Gets the currently processed portlet response. The current portlet response
      * is automatically defined when the requests is started. The current portlet
@@ -9,6 +9,7 @@
 package com.vaadin.flow.portal;
 
 import javax.portlet.EventRequest;
+import javax.portlet.PortalContext;
 import javax.portlet.PortletContext;
 import javax.portlet.PortletRequest;
 import javax.portlet.PortletResponse;
@@ -19,19 +20,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.internal.CurrentInstance;
 import com.vaadin.flow.internal.UsageStatistics;
+import com.vaadin.flow.server.ErrorEvent;
 import com.vaadin.flow.server.ErrorHandler;
 import com.vaadin.flow.server.PwaRegistry;
 import com.vaadin.flow.server.RequestHandler;
 import com.vaadin.flow.server.RouteRegistry;
 import com.vaadin.flow.server.ServiceException;
+import com.vaadin.flow.server.SessionExpiredException;
 import com.vaadin.flow.server.VaadinContext;
 import com.vaadin.flow.server.VaadinRequest;
 import com.vaadin.flow.server.VaadinResponse;
@@ -67,10 +74,17 @@ public class VaadinPortletService extends VaadinService {
     private final ErrorHandler DEFAULT_HANDLER = new DefaultPortletErrorHandler(
             this);
 
+    private final PortletBootstrapHandler bootstrapHandler = new PortletBootstrapHandler();
+
+    private final PortletCompression compression;
+
+    private volatile PortalAdapter portalAdapter;
+
     public VaadinPortletService(VaadinPortlet portlet,
             DeploymentConfiguration deploymentConfiguration) {
         super(deploymentConfiguration);
         this.portlet = portlet;
+        compression = PortletCompression.create(deploymentConfiguration);
         verifyLicense(deploymentConfiguration.isProductionMode());
 
         Registration registration = addSessionInitListener(
@@ -105,7 +119,7 @@ public class VaadinPortletService extends VaadinService {
     protected List<RequestHandler> createRequestHandlers()
             throws ServiceException {
         List<RequestHandler> handlers = super.createRequestHandlers();
-        handlers.add(new PortletBootstrapHandler());
+        handlers.add(bootstrapHandler);
         handlers.add(new PortletWebComponentProvider());
         handlers.add(new PortletWebComponentBootstrapHandler());
 
@@ -115,7 +129,11 @@ public class VaadinPortletService extends VaadinService {
 
         handlers.removeIf(
                 requestHandler -> requestHandler instanceof StreamRequestHandler);
-        handlers.add(new PortletStreamRequestHandler());
+        PortletStreamReceiverHandler receiverHandler = new PortletStreamReceiverHandler(
+                PortletUploadConfiguration
+                        .create(getDeploymentConfiguration()));
+        addServiceDestroyListener(event -> receiverHandler.shutdown());
+        handlers.add(new PortletStreamRequestHandler(receiverHandler));
 
         // HeartbeatHandler should have a higher priority because otherwise,
         // heartbeat requests are handled by PortletUidlRequestHandler or
@@ -127,6 +145,122 @@ public class VaadinPortletService extends VaadinService {
         return handlers;
     }
 
+    @Override
+    public void handleRequest(VaadinRequest request, VaadinResponse response)
+            throws ServiceException {
+        if (PortletBootstrapHandler.canHandleRequest(request)) {
+            handleRenderRequest((VaadinPortletRequest) request,
+                    (VaadinPortletResponse) response);
+        } else {
+            super.handleRequest(request, response);
+        }
+    }
+
+    @Override
+    public void requestEnd(VaadinRequest request, VaadinResponse response,
+            VaadinSession session) {
+        try {
+            if (response instanceof VaadinPortletResponse) {
+                // handlers don't necessarily close the output stream, so a
+                // compressed body is completed here
+                ((VaadinPortletResponse) response).finishCompression();
+            }
+        } catch (IOException e) {
+            getLogger().debug("Failed to complete the compressed response",
+                    e);
+        } finally {
+            super.requestEnd(request, response, session);
+        }
+    }
+
+    /**
+     * Gets the compression settings of the resource responses.
+     *
+     * @return the compression settings
+     */
+    PortletCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Handles a render request without locking the session.
+     * <p>
+     * The regular request handling locks the session when looking it up, in
+     * the request handler and when cleaning it up after the request. A render
+     * only writes the bootstrap markup, so an existing session is looked up
+     * directly and the lock is only taken when the session has to be created
+     * or its transient fields restored. The request ends without the session
+     * cleanup, which is done by the next request locking the session anyway,
+     * and errors are reported to the error handler of the session once the
+     * session is unlocked.
+     */
+    private void handleRenderRequest(VaadinPortletRequest request,
+            VaadinPortletResponse response) throws ServiceException {
+        requestStart(request, response);
+        VaadinSession session = null;
+        try {
+            session = getRenderSession(request);
+            if (session == null) {
+                return;
+            }
+            VaadinSession.setCurrent(session);
+            bootstrapHandler.handleRequest(session, request, response);
+        } catch (SessionExpiredException e) {
+            handleSessionExpired(request, response);
+        } catch (Exception e) {
+            handleRenderException(session, e);
+        } finally {
+            endRenderRequest(response);
+        }
+    }
+
+    // Same as requestEnd, except for the session cleanup which needs the lock
+    private void endRenderRequest(VaadinPortletResponse response) {
+        try {
+            response.finishCompression();
+        } catch (IOException e) {
+            getLogger().debug("Failed to complete the compressed response",
+                    e);
+        } finally {
+            CurrentInstance.clearAll();
+        }
+    }
+
+    // Mirrors the error handling of VaadinService.handleRequest, whose
+    // handler is not accessible to subclasses. The error handler runs once
+    // the session is free, so that the render doesn't wait for the lock.
+    private void handleRenderException(VaadinSession session,
+            Exception exception) throws ServiceException {
+        if (session != null) {
+            session.access(() -> {
+                ErrorHandler errorHandler = session.getErrorHandler();
+                if (errorHandler != null) {
+                    errorHandler.error(new ErrorEvent(exception));
+                }
+            });
+        }
+        throw new ServiceException(exception);
+    }
+
+    /**
+     * Looks up the session of a render request. Only the lookup skips the
+     * lock: an open session is stored once, when it is created, so it can
+     * be read from the portlet session directly.
+     */
+    private VaadinSession getRenderSession(VaadinPortletRequest request)
+            throws SessionExpiredException {
+        WrappedSession wrappedSession = request.getWrappedSession(false);
+        if (wrappedSession != null) {
+            VaadinSession session = readFromHttpSession(wrappedSession);
+            // A deserialized session has no service until its transient
+            // fields have been refreshed under the lock
+            if (session != null && session.getService() == this) {
+                return session;
+            }
+        }
+        return findVaadinSession(request);
+    }
+
     /**
      * Retrieves a reference to the portlet associated with this service.
      *
@@ -136,6 +270,75 @@ public class VaadinPortletService extends VaadinService {
         return portlet;
     }
 
+    /**
+     * Gets the adapter of the portal this service is running in.
+     * <p>
+     * The adapter is resolved when the service handles its first request.
+     * The generic adapter, which only uses the portlet API, is returned
+     * before that.
+     *
+     * @return the portal adapter, not {@code null}
+     */
+    public final PortalAdapter getPortalAdapter() {
+        PortalAdapter adapter = portalAdapter;
+        return adapter == null ? GenericPortalAdapter.INSTANCE : adapter;
+    }
+
+    /**
+     * Gets the adapter of the portal of the given request, resolving it with
+     * {@link ServiceLoader} on the first call.
+     *
+     * @param request
+     *            the portlet request
+     * @return the portal adapter, not {@code null}
+     */
+    final PortalAdapter getPortalAdapter(PortletRequest request) {
+        PortalAdapter adapter = portalAdapter;
+        if (adapter == null) {
+            // resolving twice in a race is harmless
+            ClassLoader classLoader = getClassLoader();
+            adapter = resolvePortalAdapter(request.getPortalContext(),
+                    classLoader != null ? classLoader
+                            : PortalAdapter.class.getClassLoader());
+            portalAdapter = adapter;
+        }
+        return adapter;
+    }
+
+    /**
+     * Finds the first adapter supporting the given portal among the adapters
+     * registered with {@link ServiceLoader}.
+     *
+     * @param portalContext
+     *            the context of the portal
+     * @param classLoader
+     *            the class loader to load the adapters with
+     * @return the adapter of the portal, or the generic adapter if no
+     *         registered adapter supports the portal
+     */
+    static PortalAdapter resolvePortalAdapter(PortalContext portalContext,
+            ClassLoader classLoader) {
+        Iterator<PortalAdapter> adapters = ServiceLoader
+                .load(PortalAdapter.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!adapters.hasNext()) {
+                    break;
+                }
+                PortalAdapter adapter = adapters.next();
+                if (adapter.supports(portalContext)) {
+                    getLogger().debug("Using {} for portal '{}'",
+                            adapter.getClass().getName(),
+                            portalContext.getPortalInfo());
+                    return adapter;
+                }
+            } catch (ServiceConfigurationError e) {
+                getLogger().warn("Ignoring portal adapter", e);
+            }
+        }
+        return GenericPortalAdapter.INSTANCE;
+    }
+
     private PortletContext getPortletContext() {
         return getPortlet().getPortletContext();
     }
@@ -253,6 +456,13 @@ public class VaadinPortletService extends VaadinService {
         return (WrappedPortletSession) wrappedSession;
     }
 
+    // The Vaadin session is stored in the portlet scope, so each portlet window
+    // has its own session and the portal only routes a resource URL to the
+    // window which created it. This is why every portlet on a page bootstraps
+    // with its own resource requests: a single request cannot reach the
+    // sessions of the other windows, even for portlets of the same WAR. Use
+    // PortletConstants.PORTLET_PARAMETER_INLINE_BOOTSTRAP to drop the
+    // provider script request from the chain instead.
     @Override
     protected void writeToHttpSession(WrappedSession wrappedSession,
             VaadinSession session) {
@@ -294,13 +504,11 @@ public class VaadinPortletService extends VaadinService {
 
     @Override
     public String getMainDivId(VaadinSession session, VaadinRequest request) {
-        PortletRequest portletRequest = ((VaadinPortletRequest) request)
-                .getPortletRequest();
         /*
          * We need to generate a unique ID because some portals already create a
          * DIV with the portlet's Window ID as the DOM ID.
          */
-        return "v-" + portletRequest.getWindowID();
+        return "v-" + ((VaadinPortletRequest) request).getWindowID();
     }
 
     @Override
@@ -91,6 +91,41 @@ if (!window.Vaadin.Flow.Portlets) {
         });
     };
 
+    window.Vaadin.Flow.Portlets.loadWhenVisible = function (portletRegistryName, scriptUrl) {
+        var elem = document.querySelector('[data-portlet-id="' + portletRegistryName + '"]');
+        var load = function () {
+            var bootstrap = window.Vaadin.Flow.portletBootstrap;
+            if (elem) {
+                elem.removeAttribute('data-bootstrap-lazy');
+            }
+            if (elem && bootstrap && bootstrap[elem.localName]) {
+                // The provider script has already been loaded for another
+                // portlet with the same tag
+                bootstrap[elem.localName]();
+            } else {
+                var script = document.createElement('script');
+                script.src = scriptUrl;
+                document.head.appendChild(script);
+            }
+        };
+        if (!elem || !window.IntersectionObserver) {
+            load();
+            return;
+        }
+        // Elements of minimized (hidden) portlet windows are never reported
+        // as intersecting, so they are loaded once the window is restored
+        var observer = new IntersectionObserver(function (entries) {
+            var visible = entries.some(function (entry) {
+                return entry.isIntersecting && entry.target.getClientRects().length > 0;
+            });
+            if (visible) {
+                observer.disconnect();
+                load();
+            }
+        }, { rootMargin: '200px' });
+        observer.observe(elem);
+    };
+
     window.Vaadin.Flow.Portlets.registerHub = function (tag, portletRegistryName, elem) {
         var targetElem;
         var allPortletElems = document.querySelectorAll(tag);
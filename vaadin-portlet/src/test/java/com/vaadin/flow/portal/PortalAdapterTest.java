@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortalContext;
+import javax.portlet.PortletRequest;
+import javax.portlet.filter.PortletRequestWrapper;
+import javax.servlet.http.HttpServletRequest;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+
+public class PortalAdapterTest {
+
+    @Test
+    public void liferayPortal_liferayAdapterResolved() {
+        Assert.assertTrue(resolve(
+                "Liferay Community Edition Portal 7.3.6") instanceof LiferayPortalAdapter);
+    }
+
+    @Test
+    public void plutoPortal_plutoAdapterResolved() {
+        Assert.assertTrue(
+                resolve("Apache Pluto/3.1.0") instanceof PlutoPortalAdapter);
+    }
+
+    @Test
+    public void unknownPortal_genericAdapterResolved() {
+        Assert.assertSame(GenericPortalAdapter.INSTANCE,
+                resolve("Some Portal/1.0"));
+    }
+
+    @Test
+    public void adapterResolvedOnce_portalContextNotQueriedAgain() {
+        VaadinPortletService service = new VaadinPortletService(
+                Mockito.mock(VaadinPortlet.class),
+                Mockito.mock(DeploymentConfiguration.class));
+        Assert.assertSame(GenericPortalAdapter.INSTANCE,
+                service.getPortalAdapter());
+
+        PortletRequest request = mockRequest("Apache Pluto/3.1.0");
+        PortalAdapter adapter = service.getPortalAdapter(request);
+
+        Assert.assertTrue(adapter instanceof PlutoPortalAdapter);
+        Assert.assertSame(adapter, service.getPortalAdapter(request));
+        Assert.assertSame(adapter, service.getPortalAdapter());
+        Mockito.verify(request, Mockito.times(1)).getPortalContext();
+    }
+
+    @Test
+    public void plutoAdapter_noRequestContext_noServletRequest() {
+        Assert.assertNull(new PlutoPortalAdapter()
+                .getServletRequest(Mockito.mock(PortletRequest.class)));
+    }
+
+    @Test
+    public void plutoAdapter_requestContext_servletRequestResolved() {
+        HttpServletRequest servletRequest = Mockito
+                .mock(HttpServletRequest.class);
+        PlutoRequestContext requestContext = new PlutoRequestContext(
+                servletRequest);
+        PortletRequest request = (PortletRequest) Proxy.newProxyInstance(
+                PlutoRequest.class.getClassLoader(),
+                new Class<?>[] { PlutoRequest.class },
+                (proxy, method, args) -> "getRequestContext"
+                        .equals(method.getName()) ? requestContext : null);
+
+        Assert.assertSame(servletRequest, new PlutoPortalAdapter()
+                .getServletRequest(new PortletRequestWrapper(request)));
+    }
+
+    private static PortalAdapter resolve(String portalInfo) {
+        return VaadinPortletService.resolvePortalAdapter(
+                mockRequest(portalInfo).getPortalContext(),
+                PortalAdapterTest.class.getClassLoader());
+    }
+
+    private static PortletRequest mockRequest(String portalInfo) {
+        PortletRequest request = Mockito.mock(PortletRequest.class);
+        PortalContext portalContext = Mockito.mock(PortalContext.class);
+        Mockito.when(request.getPortalContext()).thenReturn(portalContext);
+        Mockito.when(portalContext.getPortalInfo()).thenReturn(portalInfo);
+        return request;
+    }
+
+    /**
+     * Stands for the portlet requests of the Pluto container.
+     */
+    public interface PlutoRequest extends PortletRequest {
+        PlutoRequestContext getRequestContext();
+    }
+
+    /**
+     * Stands for the request context of the Pluto container.
+     */
+    public static class PlutoRequestContext {
+        private final HttpServletRequest containerRequest;
+
+        PlutoRequestContext(HttpServletRequest containerRequest) {
+            this.containerRequest = containerRequest;
+        }
+
+        public HttpServletRequest getContainerRequest() {
+            return containerRequest;
+        }
+    }
+}
@@ -30,6 +30,7 @@ public class PortletClassesSerializableTest extends ClassesSerializableTest {
     protected Stream<String> getExcludedPatterns() {
         return Stream.of(
                 "com\\.vaadin\\.flow\\.portal\\.PortletConstants",
+                "com\\.vaadin\\.flow\\.portal\\.PortletParameters",
                 // these 2 can be made serializable, if we introduce a
                 // serializable wrapper for the wrapped portlet request and
                 // response
@@ -42,8 +43,20 @@ public class PortletClassesSerializableTest extends ClassesSerializableTest {
                 "com\\.vaadin\\.flow\\.portal\\.VaadinHttpAndPortletRequest",
                 "com\\.vaadin\\.flow\\.portal\\.VaadinHttpPortletRequest",
                 "com\\.vaadin\\.flow\\.portal\\.VaadinLiferayRequest",
+                "com\\.vaadin\\.flow\\.portal\\.AdaptedPortletRequest",
                 "com\\.vaadin\\.flow\\.portal\\." +
-                        "PortletUidlRequestHandler\\$VaadinResponseWrapper"
+                        "PlutoPortalAdapter\\$AccessorLookup",
+                "com\\.vaadin\\.flow\\.portal\\." +
+                        "VaadinLiferayRequest\\$PortalAccess",
+                "com\\.vaadin\\.flow\\.portal\\." +
+                        "PortletUidlRequestHandler\\$VaadinResponseWrapper",
+                // output streams only live during a request
+                "com\\.vaadin\\.flow\\.portal\\." +
+                        "VaadinPortletResponse\\$CompressingOutputStream",
+                "com\\.vaadin\\.flow\\.portal\\." +
+                        "PortletStreamResourceHandler\\$CapturingOutputStream",
+                "com\\.vaadin\\.flow\\.portal\\." +
+                        "PortletStreamResourceHandler\\$PrecompressingOutputStream"
         );
     }
 
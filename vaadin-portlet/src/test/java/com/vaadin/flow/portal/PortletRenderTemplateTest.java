@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortletMode;
+import javax.portlet.WindowState;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PortletRenderTemplateTest {
+
+    private final PortletRenderTemplate template = new PortletRenderTemplate(
+            "my-portlet",
+            Collections.enumeration(
+                    Arrays.asList(WindowState.NORMAL, WindowState.MAXIMIZED)),
+            Collections.enumeration(
+                    Arrays.asList(PortletMode.VIEW, PortletMode.EDIT)));
+
+    @Test
+    public void getRegistrationInstruction_statesAndModesAreEncodedAsJsonArrays() {
+        Assert.assertEquals(
+                "window.Vaadin.Flow.Portlets.registerElement('my-portlet',"
+                        + "'ns','[\"normal\",\"maximized\"]',"
+                        + "'[\"view\",\"edit\"]','/action');",
+                template.getRegistrationInstruction("ns", "/action"));
+    }
+
+    @Test
+    public void getRegistrationInstruction_noStatesAndModes_emptyArrays() {
+        PortletRenderTemplate empty = new PortletRenderTemplate("my-portlet",
+                Collections.emptyEnumeration(),
+                Collections.emptyEnumeration());
+        Assert.assertEquals(
+                "window.Vaadin.Flow.Portlets.registerElement('my-portlet',"
+                        + "'ns','[]','[]','/action');",
+                empty.getRegistrationInstruction("ns", "/action"));
+    }
+
+    @Test
+    public void getLazyLoadInstruction_namespaceAndScriptUrlAreIncluded() {
+        Assert.assertEquals(
+                "window.Vaadin.Flow.Portlets.loadWhenVisible('ns',"
+                        + "'/provider.js');",
+                template.getLazyLoadInstruction("ns", "/provider.js"));
+    }
+
+    @Test
+    public void writeFragment_elementCarriesBootstrapUrl() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+
+        template.writeElement(writer, "ns", "/bootstrap", false);
+        template.writeScriptTag(writer, "/provider.js");
+        template.writeInlineScript(writer, "init();");
+        writer.flush();
+
+        Assert.assertEquals("<my-portlet data-portlet-id='ns' "
+                + "data-bootstrap-url='/bootstrap' style='width: 100%;'>"
+                + "</my-portlet>" + "<script src='/provider.js'></script>"
+                + "<script>init();</script>", out.toString());
+    }
+
+    @Test
+    public void writeElement_lazy_elementIsMarkedLazy() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+
+        template.writeElement(writer, "ns", "/bootstrap", true);
+        writer.flush();
+
+        Assert.assertEquals("<my-portlet data-portlet-id='ns' "
+                + "data-bootstrap-url='/bootstrap' data-bootstrap-lazy "
+                + "style='width: 100%;'></my-portlet>", out.toString());
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.internal.StateNode;
+import com.vaadin.flow.server.StreamReceiver;
+import com.vaadin.flow.server.VaadinSession;
+
+public class PortletStreamReceiverHandlerTest {
+
+    private VaadinPortletService service;
+    private VaadinPortletSession session;
+    private DeploymentConfiguration configuration;
+
+    @Before
+    public void init() {
+        service = Mockito.mock(VaadinPortletService.class);
+        session = new VaadinPortletSession(service) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+
+            @Override
+            public void lock() {
+            }
+
+            @Override
+            public void unlock() {
+            }
+
+            @Override
+            public void checkHasLock() {
+
+            }
+        };
+        configuration = Mockito.mock(DeploymentConfiguration.class);
+    }
+
+    @Test
+    public void handleRequest_requestTooLarge_rejectedBeforeReading()
+            throws IOException {
+        Mockito.when(configuration.getStringProperty(
+                PortletConstants.PORTLET_PARAMETER_UPLOAD_MAX_REQUEST_SIZE,
+                null)).thenReturn("1024");
+        PortletStreamReceiverHandler handler = new PortletStreamReceiverHandler(
+                PortletUploadConfiguration.create(configuration));
+
+        ResourceRequest portletRequest = Mockito.mock(ResourceRequest.class);
+        Mockito.when(portletRequest.getContentLengthLong()).thenReturn(2048L);
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+        Mockito.when(portletResponse.getWriter())
+                .thenReturn(new PrintWriter(new StringWriter()));
+        StreamReceiver receiver = Mockito.mock(StreamReceiver.class);
+
+        handler.handleRequest(session,
+                new VaadinPortletRequest(portletRequest, service),
+                new VaadinPortletResponse(portletResponse, service), receiver,
+                "1", "key");
+
+        Mockito.verify(portletResponse).setProperty(
+                ResourceResponse.HTTP_STATUS_CODE, "413");
+        Mockito.verify(portletRequest, Mockito.never())
+                .getPortletInputStream();
+        Mockito.verifyZeroInteractions(receiver);
+    }
+
+    @Test
+    public void handleRequest_sessionLimitReached_tooManyRequests()
+            throws IOException {
+        Mockito.when(configuration.getStringProperty(
+                PortletConstants.PORTLET_PARAMETER_UPLOAD_SESSION_LIMIT,
+                null)).thenReturn("1");
+        PortletStreamReceiverHandler handler = new PortletStreamReceiverHandler(
+                PortletUploadConfiguration.create(configuration));
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+        Mockito.when(portletResponse.getWriter())
+                .thenReturn(new PrintWriter(new StringWriter()));
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, service);
+
+        // occupy the only upload slot of the session
+        PortletStreamReceiverHandler.getSessionLimits(session).getUploads(1)
+                .acquireUninterruptibly();
+
+        StreamReceiver receiver = Mockito.mock(StreamReceiver.class);
+        handler.handleRequest(session,
+                new VaadinPortletRequest(Mockito.mock(ResourceRequest.class),
+                        service),
+                response, receiver, "1", "key");
+
+        Mockito.verify(portletResponse).setProperty(
+                ResourceResponse.HTTP_STATUS_CODE, "429");
+        Mockito.verifyZeroInteractions(receiver);
+    }
+
+    @Test
+    public void parallelUpload_fileSpilledToPool_othersOnRequestThread()
+            throws IOException {
+        enableParallelUpload();
+        CountDownLatch inlineHandled = new CountDownLatch(1);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        PortletStreamReceiverHandler handler = new RecordingHandler(
+                configuration, handled) {
+            @Override
+            void handle(String filename) throws InterruptedException {
+                if (filename.equals("a.txt")) {
+                    // keeps the only permit of the session until the next
+                    // file has been handled
+                    Assert.assertTrue(
+                            inlineHandled.await(5, TimeUnit.SECONDS));
+                } else {
+                    inlineHandled.countDown();
+                }
+            }
+        };
+
+        upload(handler, "a.txt", "b.txt");
+
+        Assert.assertEquals(2, handled.size());
+        // a file exceeding the permits is read from the request on the
+        // request thread
+        Assert.assertTrue(handled.stream().anyMatch(entry -> entry
+                .startsWith("b.txt:" + Thread.currentThread().getName()
+                        + ":")));
+        String spilled = handled.stream()
+                .filter(entry -> entry.startsWith("a.txt:")).findFirst()
+                .get();
+        Assert.assertTrue(spilled, spilled.contains(":vaadin-portlet-upload-"));
+        // the content length of a spilled file is the size of the file
+        Assert.assertTrue(spilled, spilled.endsWith(":5"));
+        assertPermitsReleased();
+        handler.shutdown();
+    }
+
+    @Test
+    public void parallelUpload_receiverFails_permitReleased()
+            throws IOException {
+        enableParallelUpload();
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        PortletStreamReceiverHandler handler = new RecordingHandler(
+                configuration, handled) {
+            @Override
+            void handle(String filename) {
+                throw new IllegalStateException("Receiver failed");
+            }
+        };
+
+        upload(handler, "a.txt");
+
+        Assert.assertEquals(1, handled.size());
+        assertPermitsReleased();
+        handler.shutdown();
+    }
+
+    @Test
+    public void parallelUpload_afterShutdown_fileProcessedOnRequestThread()
+            throws IOException {
+        enableParallelUpload();
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        PortletStreamReceiverHandler handler = new RecordingHandler(
+                configuration, handled);
+        handler.shutdown();
+
+        upload(handler, "a.txt");
+
+        Assert.assertEquals(Collections.singletonList(
+                "a.txt:" + Thread.currentThread().getName() + ":5"), handled);
+        assertPermitsReleased();
+    }
+
+    private void enableParallelUpload() {
+        Mockito.when(configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_STREAMING_UPLOAD, false))
+                .thenReturn(true);
+        Mockito.when(configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_PARALLEL_UPLOAD, false))
+                .thenReturn(true);
+        Mockito.when(configuration.getStringProperty(
+                PortletConstants.PORTLET_PARAMETER_PARALLEL_UPLOAD_SESSION_LIMIT,
+                null)).thenReturn("1");
+    }
+
+    private void assertPermitsReleased() {
+        Assert.assertEquals(1, PortletStreamReceiverHandler
+                .getSessionLimits(session).getParallelFiles(1)
+                .availablePermits());
+    }
+
+    private void upload(PortletStreamReceiverHandler handler,
+            String... filenames) throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (String filename : filenames) {
+            body.append("--b\r\nContent-Disposition: form-data; name=\"file\";"
+                    + " filename=\"").append(filename)
+                    .append("\"\r\nContent-Type: text/plain\r\n\r\n")
+                    .append("hello\r\n");
+        }
+        body.append("--b--\r\n");
+        byte[] content = body.toString().getBytes(StandardCharsets.US_ASCII);
+
+        ResourceRequest portletRequest = Mockito.mock(ResourceRequest.class);
+        Mockito.when(portletRequest.getContentType())
+                .thenReturn("multipart/form-data; boundary=b");
+        Mockito.when(portletRequest.getContentLength())
+                .thenReturn(content.length);
+        Mockito.when(portletRequest.getPortletInputStream())
+                .thenReturn(new ByteArrayInputStream(content));
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+        Mockito.when(portletResponse.getWriter())
+                .thenReturn(new PrintWriter(new StringWriter()));
+        Mockito.when(portletResponse.getPortletOutputStream())
+                .thenReturn(new ByteArrayOutputStream());
+
+        handler.doHandleMultipartFileUpload(session,
+                new VaadinPortletRequest(portletRequest, service),
+                new VaadinPortletResponse(portletResponse, service),
+                Mockito.mock(StreamReceiver.class), null);
+    }
+
+    /**
+     * Records the handled files as {@code name:thread:contentLength}
+     * instead of passing them to the receiver.
+     */
+    private static class RecordingHandler
+            extends PortletStreamReceiverHandler {
+        private final List<String> handled;
+
+        private RecordingHandler(DeploymentConfiguration configuration,
+                List<String> handled) {
+            super(PortletUploadConfiguration.create(configuration));
+            this.handled = handled;
+        }
+
+        @Override
+        protected boolean handleFileUploadValidationAndData(
+                VaadinSession session, InputStream inputStream,
+                StreamReceiver streamReceiver, String filename,
+                String mimeType, long contentLength, StateNode node) {
+            handled.add(filename + ":" + Thread.currentThread().getName()
+                    + ":" + contentLength);
+            try {
+                handle(filename);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }
+
+        void handle(String filename) throws InterruptedException {
+        }
+    }
+}
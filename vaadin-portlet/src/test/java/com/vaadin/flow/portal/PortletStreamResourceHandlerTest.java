@@ -10,18 +10,39 @@ package com.vaadin.flow.portal;
 
 import javax.portlet.MimeResponse;
 import javax.portlet.PortletRequest;
+import javax.portlet.ResourceResponse;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.internal.CurrentInstance;
 import com.vaadin.flow.server.StreamResource;
+import com.vaadin.flow.server.VaadinRequest;
 
 public class PortletStreamResourceHandlerTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private PortletStreamResourceHandler handler = new PortletStreamResourceHandler();
     private VaadinPortletSession session;
     private VaadinPortletService service;
@@ -71,4 +92,264 @@ public class PortletStreamResourceHandlerTest {
                 .setProperty(headerName, headerValue);
     }
 
+    @Test
+    public void handleRequest_matchingETag_notModifiedWithoutBody()
+            throws IOException {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("If-None-Match"))
+                .thenReturn("\"other\", W/\"v1\"");
+        MimeResponse portletResponse = Mockito.mock(MimeResponse.class);
+
+        AtomicBoolean streamed = new AtomicBoolean();
+        StreamResource resource = new StreamResource("report.pdf", () -> {
+            streamed.set(true);
+            return new ByteArrayInputStream(new byte[0]);
+        });
+        resource.setHeader("ETag", "\"v1\"");
+
+        handler.handleRequest(session,
+                new VaadinPortletRequest(portletRequest, service),
+                new VaadinPortletResponse(portletResponse, service), resource);
+
+        Mockito.verify(portletResponse).setProperty(
+                ResourceResponse.HTTP_STATUS_CODE, "304");
+        Mockito.verify(portletResponse).setProperty("ETag", "\"v1\"");
+        Mockito.verify(portletResponse, Mockito.never())
+                .getPortletOutputStream();
+        Assert.assertFalse(streamed.get());
+    }
+
+    @Test
+    public void handleRequest_modifiedSinceRequest_bodyIsSent()
+            throws IOException {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("If-Modified-Since"))
+                .thenReturn("Tue, 15 Nov 1994 08:12:31 GMT");
+        MimeResponse portletResponse = Mockito.mock(MimeResponse.class);
+
+        StreamResource resource = new StreamResource("report.pdf",
+                () -> new ByteArrayInputStream(new byte[0]));
+        resource.setContentType("application/pdf");
+        resource.setHeader("Last-Modified", "Wed, 16 Nov 1994 08:12:31 GMT");
+
+        handler.handleRequest(session,
+                new VaadinPortletRequest(portletRequest, service),
+                new VaadinPortletResponse(portletResponse, service), resource);
+
+        Mockito.verify(portletResponse, Mockito.never()).setProperty(
+                ResourceResponse.HTTP_STATUS_CODE, "304");
+        Mockito.verify(portletResponse).getPortletOutputStream();
+    }
+
+    @Test
+    public void isNotModified_notModifiedSinceRequest_true() {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("If-Modified-Since"))
+                .thenReturn("Tue, 15 Nov 1994 08:12:31 GMT");
+        StreamResource resource = new StreamResource("report.pdf",
+                () -> new ByteArrayInputStream(new byte[0]));
+        resource.setHeader("Last-Modified", "Tue, 15 Nov 1994 08:12:31 GMT");
+
+        Assert.assertTrue(PortletStreamResourceHandler.isNotModified(
+                new VaadinPortletRequest(portletRequest, service),
+                resource.getHeaders()));
+    }
+
+    @Test
+    public void handleRequest_singleRange_partialContentIsSent()
+            throws IOException {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("Range"))
+                .thenReturn("bytes=2-5");
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Mockito.when(portletResponse.getPortletOutputStream()).thenReturn(out);
+
+        handler.handleRequest(session,
+                new VaadinPortletRequest(portletRequest, service),
+                new VaadinPortletResponse(portletResponse, service),
+                createSeekableResource("0123456789"));
+
+        Mockito.verify(portletResponse).setProperty(
+                ResourceResponse.HTTP_STATUS_CODE, "206");
+        Mockito.verify(portletResponse).setProperty("Content-Range",
+                "bytes 2-5/10");
+        Mockito.verify(portletResponse).setContentLength(4);
+        Assert.assertEquals("2345",
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void handleRequest_unsatisfiableRange_rangeNotSatisfiable()
+            throws IOException {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("Range"))
+                .thenReturn("bytes=20-");
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+
+        handler.handleRequest(session,
+                new VaadinPortletRequest(portletRequest, service),
+                new VaadinPortletResponse(portletResponse, service),
+                createSeekableResource("0123456789"));
+
+        Mockito.verify(portletResponse).setProperty(
+                ResourceResponse.HTTP_STATUS_CODE, "416");
+        Mockito.verify(portletResponse).setProperty("Content-Range",
+                "bytes */10");
+        Mockito.verify(portletResponse, Mockito.never())
+                .getPortletOutputStream();
+    }
+
+    @Test
+    public void getRequestedRanges_suffixAndOpenRanges_areResolved() {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("Range"))
+                .thenReturn("bytes=-3, 8-, 0-0");
+
+        List<long[]> ranges = PortletStreamResourceHandler.getRequestedRanges(
+                new VaadinPortletRequest(portletRequest, service),
+                Collections.emptyMap(), 10);
+
+        Assert.assertEquals(3, ranges.size());
+        Assert.assertArrayEquals(new long[] { 7, 9 }, ranges.get(0));
+        Assert.assertArrayEquals(new long[] { 8, 9 }, ranges.get(1));
+        Assert.assertArrayEquals(new long[] { 0, 0 }, ranges.get(2));
+    }
+
+    @Test
+    public void getRequestedRanges_ifRangeMismatch_wholeContent() {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("Range"))
+                .thenReturn("bytes=0-1");
+        Mockito.when(portletRequest.getProperty("If-Range"))
+                .thenReturn("\"old\"");
+
+        Assert.assertNull(PortletStreamResourceHandler.getRequestedRanges(
+                new VaadinPortletRequest(portletRequest, service),
+                Collections.singletonMap("ETag", "\"new\""), 10));
+    }
+
+    @Test
+    public void handleRequest_fileResource_contentIsTransferred()
+            throws IOException {
+        File file = temporaryFolder.newFile("document.txt");
+        Files.write(file.toPath(),
+                "file content".getBytes(StandardCharsets.US_ASCII));
+        FileStreamResource resource = new FileStreamResource(file);
+        resource.setContentType("text/plain");
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Mockito.when(portletResponse.getPortletOutputStream()).thenReturn(out);
+
+        handler.handleRequest(session,
+                new VaadinPortletRequest(Mockito.mock(PortletRequest.class),
+                        service),
+                new VaadinPortletResponse(portletResponse, service), resource);
+
+        Mockito.verify(portletResponse).setContentLength(12);
+        Assert.assertEquals("file content",
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void handleRequest_smallTextBody_sentUncompressedAndNotCached()
+            throws IOException {
+        enableCompression();
+        AtomicInteger opened = new AtomicInteger();
+        StreamResource resource = createTextResource("small", opened);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResourceResponse portletResponse = handleCompressed(resource, out);
+
+        Mockito.verify(portletResponse, Mockito.never())
+                .setProperty("Content-Encoding", "gzip");
+        Assert.assertEquals("small",
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        Assert.assertEquals(0, handler.getPrecompressedBytes());
+    }
+
+    @Test
+    public void handleRequest_largeTextBody_compressedOnceAndCached()
+            throws IOException {
+        enableCompression();
+        char[] content = new char[8192];
+        Arrays.fill(content, 'a');
+        AtomicInteger opened = new AtomicInteger();
+        StreamResource resource = createTextResource(new String(content),
+                opened);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ResourceResponse portletResponse = handleCompressed(resource, first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        handleCompressed(resource, second);
+
+        Mockito.verify(portletResponse).setProperty("Content-Encoding",
+                "gzip");
+        Mockito.verify(portletResponse).setProperty("ETag", "W/\"v1\"");
+        Assert.assertEquals(1, opened.get());
+        Assert.assertEquals(first.size(), handler.getPrecompressedBytes());
+        Assert.assertArrayEquals(first.toByteArray(), second.toByteArray());
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(second.toByteArray()))) {
+            Assert.assertEquals(new String(content), new String(
+                    in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void enableCompression() {
+        DeploymentConfiguration configuration = Mockito
+                .mock(DeploymentConfiguration.class);
+        Mockito.when(configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_COMPRESSION, false))
+                .thenReturn(true);
+        Mockito.when(service.getCompression())
+                .thenReturn(PortletCompression.create(configuration));
+    }
+
+    private ResourceResponse handleCompressed(StreamResource resource,
+            ByteArrayOutputStream out) throws IOException {
+        PortletRequest portletRequest = Mockito.mock(PortletRequest.class);
+        Mockito.when(portletRequest.getProperty("Accept-Encoding"))
+                .thenReturn("gzip");
+        VaadinPortletRequest request = new VaadinPortletRequest(
+                portletRequest, service);
+        ResourceResponse portletResponse = Mockito
+                .mock(ResourceResponse.class);
+        Mockito.when(portletResponse.getPortletOutputStream()).thenReturn(out);
+        CurrentInstance.set(VaadinRequest.class, request);
+        try {
+            handler.handleRequest(session, request,
+                    new VaadinPortletResponse(portletResponse, service),
+                    resource);
+        } finally {
+            CurrentInstance.clearAll();
+        }
+        return portletResponse;
+    }
+
+    private static StreamResource createTextResource(String content,
+            AtomicInteger opened) {
+        StreamResource resource = new StreamResource("data.txt", () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(
+                    content.getBytes(StandardCharsets.US_ASCII));
+        });
+        resource.setContentType("text/plain");
+        resource.setHeader("ETag", "\"v1\"");
+        return resource;
+    }
+
+    private static SeekableStreamResource createSeekableResource(
+            String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.US_ASCII);
+        SeekableStreamResource resource = new SeekableStreamResource(
+                "data.bin", bytes.length,
+                offset -> new ByteArrayInputStream(bytes, (int) offset,
+                        bytes.length - (int) offset));
+        resource.setContentType("application/octet-stream");
+        return resource;
+    }
 }
@@ -148,6 +148,34 @@ public class PortletStreamResourceRegistryTest {
         }
     }
 
+    @Test
+    public void findResource_registeredResource_foundUntilUnregistered() {
+        VaadinPortletResponse responseMock = Mockito.mock(VaadinPortletResponse.class);
+
+        VaadinResponse vaadinResponse = CurrentInstance.get(VaadinResponse.class);
+        UI currentUI = CurrentInstance.get(UI.class);
+        try {
+            CurrentInstance.set(VaadinResponse.class, responseMock);
+            CurrentInstance.set(UI.class, this.ui);
+            StreamRegistration registration = registry.registerResource(streamResourceMock);
+            Assert.assertSame(streamResourceMock, registry
+                    .findResource(42, resourceId, "test.xml").orElse(null));
+            Assert.assertFalse(registry
+                    .findResource(41, resourceId, "test.xml").isPresent());
+
+            registration.unregister();
+            Assert.assertFalse(registry
+                    .findResource(42, resourceId, "test.xml").isPresent());
+        } finally {
+            if (vaadinResponse != null) {
+                CurrentInstance.set(VaadinResponse.class, vaadinResponse);
+            }
+            if (currentUI != null) {
+                CurrentInstance.set(UI.class, currentUI);
+            }
+        }
+    }
+
     private static final class StreamResourceMock extends AbstractStreamResource {
         @Override
         public String getName() {
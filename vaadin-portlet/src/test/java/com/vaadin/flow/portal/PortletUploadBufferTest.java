@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PortletUploadBufferTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void smallUpload_keptInMemory() throws IOException {
+        PortletUploadBuffer buffer = new PortletUploadBuffer(8,
+                temporaryFolder.getRoot());
+        try (OutputStream out = buffer.createOutputStream()) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+
+        Assert.assertTrue(buffer.isInMemory());
+        Assert.assertNull(buffer.getFile());
+        Assert.assertEquals(3, buffer.getSize());
+        try (InputStream in = buffer.getInputStream()) {
+            Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, readAll(in));
+        }
+    }
+
+    @Test
+    public void largeUpload_spilledToFileAndDeletedOnDispose()
+            throws IOException {
+        PortletUploadBuffer buffer = new PortletUploadBuffer(8,
+                temporaryFolder.getRoot());
+        byte[] content = new byte[20];
+        content[19] = 7;
+        try (OutputStream out = buffer.createOutputStream()) {
+            out.write(content);
+        }
+
+        Assert.assertFalse(buffer.isInMemory());
+        File file = buffer.getFile();
+        Assert.assertTrue(file.exists());
+        Assert.assertEquals(20, buffer.getSize());
+        try (InputStream in = buffer.getInputStream()) {
+            Assert.assertArrayEquals(content, readAll(in));
+        }
+
+        buffer.dispose();
+        Assert.assertFalse(file.exists());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[16];
+        int read;
+        while ((read = in.read(chunk)) >= 0) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
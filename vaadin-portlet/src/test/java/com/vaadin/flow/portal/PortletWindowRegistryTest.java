@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortletMode;
+import javax.portlet.WindowState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.flow.component.ComponentUtil;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.html.Div;
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.server.VaadinSession;
+
+public class PortletWindowRegistryTest {
+
+    private final PortletWindowRegistry registry = new PortletWindowRegistry();
+
+    private final PortletViewContextLimits noLimits = PortletViewContextLimits
+            .create(null);
+
+    @Test
+    public void viewContextsKeyedByWindowAndNamespace() {
+        PortletViewContext first = createContext();
+        PortletViewContext second = createContext();
+        registry.setViewContext("w1", "ns", first, noLimits);
+        registry.setViewContext("w2", "ns", second, noLimits);
+
+        Assert.assertSame(first,
+                registry.getViewContext("w1", "ns", noLimits));
+        Assert.assertSame(second,
+                registry.getViewContext("w2", "ns", noLimits));
+        Assert.assertNull(registry.getViewContext("w1", "other", noLimits));
+        Assert.assertTrue(registry.hasWindow("w1"));
+        Assert.assertFalse(registry.hasWindow("w3"));
+    }
+
+    @Test
+    public void limitExceeded_leastRecentlyUsedEvicted() {
+        PortletViewContextLimits limits = createLimits("2");
+
+        registry.setViewContext("w1", "ns", createContext(), limits);
+        registry.setViewContext("w2", "ns", createContext(), limits);
+        registry.getViewContext("w1", "ns", noLimits);
+        registry.setViewContext("w3", "ns", createContext(), limits);
+
+        Assert.assertEquals(2, registry.size());
+        Assert.assertNotNull(registry.getViewContext("w1", "ns", noLimits));
+        Assert.assertNull(registry.getViewContext("w2", "ns", noLimits));
+        Assert.assertNotNull(registry.getViewContext("w3", "ns", noLimits));
+    }
+
+    @Test
+    public void limitExceeded_shownViewsKept() {
+        PortletViewContextLimits limits = createLimits("1");
+
+        registry.setViewContext("w1", "ns", createContext(), limits);
+        registry.bindToUI("w1", "ns", createAttachedUI());
+        registry.setViewContext("w2", "ns", createContext(), limits);
+
+        Assert.assertEquals(2, registry.size());
+        Assert.assertNotNull(registry.getViewContext("w1", "ns", noLimits));
+    }
+
+    @Test
+    public void uiDetached_viewContextEvicted() {
+        registry.setViewContext("w1", "ns", createContext(), noLimits);
+        UI ui = new UI();
+        registry.bindToUI("w1", "ns", ui);
+
+        ComponentUtil.fireEvent(ui, new DetachEvent(ui));
+
+        Assert.assertNull(registry.getViewContext("w1", "ns", noLimits));
+    }
+
+    @Test
+    public void viewMovedToNewUI_oldUIDetached_viewContextKept() {
+        PortletViewContext context = createContext();
+        registry.setViewContext("w1", "ns", context, noLimits);
+        UI oldUi = new UI();
+        registry.bindToUI("w1", "ns", oldUi);
+        registry.bindToUI("w1", "ns", new UI());
+
+        ComponentUtil.fireEvent(oldUi, new DetachEvent(oldUi));
+
+        Assert.assertSame(context,
+                registry.getViewContext("w1", "ns", noLimits));
+    }
+
+    @Test
+    public void deserialized_uiDetached_viewContextEvicted() throws Exception {
+        registry.setViewContext("w1", "ns", createContext(), noLimits);
+        UI ui = new UI();
+        registry.bindToUI("w1", "ns", ui);
+
+        Object[] restored = serializeAndDeserialize(
+                new Object[] { registry, ui });
+        PortletWindowRegistry restoredRegistry = (PortletWindowRegistry) restored[0];
+        UI restoredUi = (UI) restored[1];
+        Assert.assertNotNull(
+                restoredRegistry.getViewContext("w1", "ns", noLimits));
+        ComponentUtil.fireEvent(restoredUi, new DetachEvent(restoredUi));
+
+        Assert.assertNull(
+                restoredRegistry.getViewContext("w1", "ns", noLimits));
+    }
+
+    private static Object[] serializeAndDeserialize(Object[] objects)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(objects);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Object[]) in.readObject();
+        }
+    }
+
+    private static PortletViewContextLimits createLimits(String maxViews) {
+        DeploymentConfiguration configuration = Mockito
+                .mock(DeploymentConfiguration.class);
+        Mockito.when(configuration.getStringProperty(
+                PortletConstants.PORTLET_PARAMETER_VIEW_CONTEXT_LIMIT, null))
+                .thenReturn(maxViews);
+        return PortletViewContextLimits.create(configuration);
+    }
+
+    private static UI createAttachedUI() {
+        VaadinSession session = Mockito.mock(VaadinSession.class);
+        return new UI() {
+            @Override
+            public VaadinSession getSession() {
+                return session;
+            }
+        };
+    }
+
+    private static PortletViewContext createContext() {
+        return new PortletViewContext(new Div(), new AtomicBoolean(true),
+                PortletMode.VIEW, WindowState.NORMAL);
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortletSession;
+import javax.portlet.RenderRequest;
+import javax.portlet.ResourceRequest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.flow.server.WrappedSession;
+
+public class VaadinPortletRequestTest {
+
+    @Test(expected = IllegalStateException.class)
+    public void renderRequest_getMethod_throws() {
+        new VaadinPortletRequest(Mockito.mock(RenderRequest.class), null)
+                .getMethod();
+    }
+
+    @Test
+    public void renderRequest_noClientDataAndPathInfo() {
+        VaadinPortletRequest request = new VaadinPortletRequest(
+                Mockito.mock(RenderRequest.class), null);
+
+        Assert.assertFalse(request.isClientDataRequest());
+        Assert.assertNull(request.getPathInfo());
+    }
+
+    @Test
+    public void resourceRequest_methodAndPathInfoFromRequest() {
+        ResourceRequest resourceRequest = Mockito.mock(ResourceRequest.class);
+        Mockito.when(resourceRequest.getResourceID()).thenReturn("/uidl");
+        Mockito.when(resourceRequest.getMethod()).thenReturn("POST");
+        VaadinPortletRequest request = new VaadinPortletRequest(
+                resourceRequest, null);
+
+        Assert.assertTrue(request.isClientDataRequest());
+        Assert.assertEquals("POST", request.getMethod());
+        Assert.assertEquals("/uidl", request.getPathInfo());
+        Assert.assertEquals("/uidl", request.getPathInfo());
+        Mockito.verify(resourceRequest, Mockito.times(1)).getResourceID();
+    }
+
+    @Test
+    public void getWrappedSession_sameSession_wrapperReused() {
+        RenderRequest renderRequest = Mockito.mock(RenderRequest.class);
+        PortletSession session = Mockito.mock(PortletSession.class);
+        Mockito.when(renderRequest.getPortletSession(true)).thenReturn(session);
+        VaadinPortletRequest request = new VaadinPortletRequest(renderRequest,
+                null);
+
+        WrappedSession wrappedSession = request.getWrappedSession();
+        Assert.assertSame(wrappedSession, request.getWrappedSession());
+
+        PortletSession newSession = Mockito.mock(PortletSession.class);
+        Mockito.when(renderRequest.getPortletSession(true))
+                .thenReturn(newSession);
+        Assert.assertSame(newSession,
+                ((WrappedPortletSession) request.getWrappedSession())
+                        .getPortletSession());
+    }
+}
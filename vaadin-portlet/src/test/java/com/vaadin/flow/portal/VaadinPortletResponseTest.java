@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2019-2022 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.portal;
+
+import javax.portlet.PortalContext;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.ResourceURL;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.internal.CurrentInstance;
+import com.vaadin.flow.server.VaadinRequest;
+
+public class VaadinPortletResponseTest {
+
+    private VaadinPortletService service;
+    private ResourceResponse portletResponse;
+    private ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    @Before
+    public void init() throws IOException {
+        DeploymentConfiguration configuration = Mockito
+                .mock(DeploymentConfiguration.class);
+        Mockito.when(configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_COMPRESSION, false))
+                .thenReturn(true);
+        service = Mockito.mock(VaadinPortletService.class);
+        Mockito.when(service.getCompression())
+                .thenReturn(PortletCompression.create(configuration));
+
+        ResourceRequest portletRequest = Mockito.mock(ResourceRequest.class);
+        Mockito.when(portletRequest.getProperty("Accept-Encoding"))
+                .thenReturn("gzip, deflate");
+        CurrentInstance.set(VaadinRequest.class,
+                new VaadinPortletRequest(portletRequest, service));
+
+        portletResponse = Mockito.mock(ResourceResponse.class);
+        Mockito.when(portletResponse.getPortletOutputStream()).thenReturn(body);
+    }
+
+    @After
+    public void clear() {
+        CurrentInstance.clearAll();
+    }
+
+    @Test
+    public void largeTextBody_gzipCompressed() throws IOException {
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, service);
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'a');
+
+        response.setContentType("application/json; charset=UTF-8");
+        response.setContentLength(content.length);
+        OutputStream out = response.getOutputStream();
+        out.write(content);
+        out.flush();
+        response.finishCompression();
+
+        Mockito.verify(portletResponse).setProperty("Content-Encoding",
+                "gzip");
+        Mockito.verify(portletResponse, Mockito.never())
+                .setContentLength(Mockito.anyInt());
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(body.toByteArray()))) {
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            int read;
+            while ((read = in.read(chunk)) >= 0) {
+                decompressed.write(chunk, 0, read);
+            }
+            Assert.assertArrayEquals(content, decompressed.toByteArray());
+        }
+    }
+
+    @Test
+    public void smallBody_sentUncompressed() throws IOException {
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, service);
+        byte[] content = "{}".getBytes();
+
+        response.setContentType("application/json");
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+        response.finishCompression();
+
+        Mockito.verify(portletResponse, Mockito.never())
+                .setProperty("Content-Encoding", "gzip");
+        Mockito.verify(portletResponse).setProperty("Vary",
+                "Accept-Encoding");
+        Mockito.verify(portletResponse).setContentLength(2);
+        Assert.assertArrayEquals(content, body.toByteArray());
+    }
+
+    @Test
+    public void largeTextBody_strongETagMadeWeak() throws IOException {
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, service);
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'a');
+
+        response.setContentType("text/plain");
+        response.setHeader("ETag", "\"v1\"");
+        response.getOutputStream().write(content);
+        response.finishCompression();
+
+        Mockito.verify(portletResponse).setProperty("Vary",
+                "Accept-Encoding");
+        Mockito.verify(portletResponse).setProperty("ETag", "W/\"v1\"");
+    }
+
+    @Test
+    public void binaryBody_noVary() throws IOException {
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, service);
+
+        response.setContentType("image/png");
+        response.getOutputStream().write(new byte[4096]);
+        response.finishCompression();
+
+        Mockito.verify(portletResponse, Mockito.never())
+                .setProperty(Mockito.eq("Vary"), Mockito.anyString());
+    }
+
+    @Test
+    public void bufferedWriterBody_writtenWhenServiceEndsRequest()
+            throws IOException {
+        DeploymentConfiguration configuration = Mockito
+                .mock(DeploymentConfiguration.class);
+        Mockito.when(configuration.getBooleanProperty(
+                PortletConstants.PORTLET_PARAMETER_COMPRESSION, false))
+                .thenReturn(true);
+        VaadinPortletService realService = new VaadinPortletService(
+                Mockito.mock(VaadinPortlet.class), configuration);
+        Mockito.when(portletResponse.getCharacterEncoding())
+                .thenReturn("UTF-8");
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, realService);
+
+        // like the UIDL and bootstrap handlers, which flush the writer
+        // without closing it
+        response.setContentType("application/json");
+        PrintWriter writer = response.getWriter();
+        writer.write("{}");
+        writer.flush();
+        Assert.assertEquals(0, body.size());
+
+        realService.requestEnd(VaadinRequest.getCurrent(), response, null);
+
+        Assert.assertEquals("{}", body.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void setDateHeader_concurrentThreads_headersAreNeverCorrupted()
+            throws Exception {
+        DateTimeFormatter reference = DateTimeFormatter
+                .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+                .withZone(ZoneOffset.UTC);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                long base = 1_000_000_000_000L + t * 7_919_000L;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 20_000; i++) {
+                        // a few distinct seconds per thread, so that the
+                        // threads keep replacing each other's cached value
+                        long timestamp = base + (i % 5) * 1000L + i % 1000;
+                        String formatted = VaadinPortletResponse
+                                .formatHttpDate(timestamp);
+                        String expected = reference.format(Instant
+                                .ofEpochSecond(Math.floorDiv(timestamp,
+                                        1000)));
+                        if (!expected.equals(formatted)) {
+                            return formatted + " != " + expected;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                Assert.assertNull(result.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void setCacheTime_noCache_constantHeaders() {
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, service);
+
+        response.setCacheTime(0);
+
+        Mockito.verify(portletResponse).setProperty("Cache-Control",
+                "no-cache");
+        Mockito.verify(portletResponse).setProperty("Pragma", "no-cache");
+        Mockito.verify(portletResponse).setProperty("Expires",
+                "Thu, 01 Jan 1970 00:00:00 GMT");
+    }
+
+    @Test
+    public void resourceUrls_templateVerifiedBySecondUrl_noExtraPortalUrls() {
+        PortalContext portalContext = Mockito.mock(PortalContext.class);
+        Mockito.when(portalContext.getPortalInfo())
+                .thenReturn("Liferay Community Edition Portal 7.3.6");
+        ResourceRequest portletRequest = Mockito.mock(ResourceRequest.class);
+        Mockito.when(portletRequest.getPortalContext())
+                .thenReturn(portalContext);
+        VaadinPortletService liferayService = new VaadinPortletService(
+                Mockito.mock(VaadinPortlet.class),
+                Mockito.mock(DeploymentConfiguration.class));
+        liferayService.getPortalAdapter(portletRequest);
+        Mockito.when(portletResponse.createResourceURL())
+                .thenAnswer(invocation -> mockResourceUrl());
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, liferayService);
+
+        Assert.assertEquals("/page?id=%2Fuidl&p=1",
+                response.createResourceURL("/uidl"));
+        Assert.assertEquals("/page?id=%2Fheartbeat&p=1",
+                response.createResourceURL("/heartbeat"));
+        Assert.assertEquals("/page?id=%2Fdynamic%2Fresource-1&p=1",
+                response.createResourceURL("/dynamic/resource-1"));
+        Mockito.verify(portletResponse, Mockito.times(2)).createResourceURL();
+    }
+
+    @Test
+    public void resourceUrls_idWithUncheckedCharacters_portalEncodingUsed() {
+        PortalContext portalContext = Mockito.mock(PortalContext.class);
+        Mockito.when(portalContext.getPortalInfo())
+                .thenReturn("Liferay Community Edition Portal 7.3.6");
+        ResourceRequest portletRequest = Mockito.mock(ResourceRequest.class);
+        Mockito.when(portletRequest.getPortalContext())
+                .thenReturn(portalContext);
+        VaadinPortletService liferayService = new VaadinPortletService(
+                Mockito.mock(VaadinPortlet.class),
+                Mockito.mock(DeploymentConfiguration.class));
+        liferayService.getPortalAdapter(portletRequest);
+        Mockito.when(portletResponse.createResourceURL())
+                .thenAnswer(invocation -> mockResourceUrl());
+        VaadinPortletResponse response = new VaadinPortletResponse(
+                portletResponse, liferayService);
+        response.createResourceURL("/uidl");
+        response.createResourceURL("/heartbeat");
+
+        Assert.assertEquals("/page?id=%2Fdynamic%2Fa%20b&p=1",
+                response.createResourceURL("/dynamic/a b"));
+        Assert.assertEquals("/page?id=%2Fdynamic%2F~a%2A&p=1",
+                response.createResourceURL("/dynamic/~a*"));
+        Mockito.verify(portletResponse, Mockito.times(4)).createResourceURL();
+    }
+
+    private static ResourceURL mockResourceUrl() {
+        ResourceURL url = Mockito.mock(ResourceURL.class);
+        StringBuilder resourceId = new StringBuilder();
+        Mockito.doAnswer(invocation -> resourceId
+                .append((String) invocation.getArguments()[0])).when(url)
+                .setResourceID(Mockito.anyString());
+        // Encodes like RFC 3986 rather than like URLEncoder
+        Mockito.when(url.toString()).thenAnswer(invocation -> "/page?id="
+                + URLEncoder
+                        .encode(resourceId.toString(), StandardCharsets.UTF_8)
+                        .replace("+", "%20").replace("%7E", "~")
+                        .replace("*", "%2A")
+                + "&p=1");
+        return url;
+    }
+
+    @Test
+    public void acceptsGzip_qualityValuesAreRespected() {
+        Assert.assertTrue(PortletCompression.acceptsGzip("deflate, gzip"));
+        Assert.assertTrue(PortletCompression.acceptsGzip("*"));
+        Assert.assertFalse(PortletCompression.acceptsGzip("gzip;q=0, *"));
+        Assert.assertFalse(PortletCompression.acceptsGzip("identity"));
+        Assert.assertFalse(PortletCompression.acceptsGzip(null));
+    }
+}
@@ -8,6 +8,13 @@
  */
 package com.vaadin.flow.portal;
 
+import javax.portlet.RenderRequest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -18,8 +25,10 @@ import org.mockito.Mockito;
 import com.vaadin.flow.di.DefaultInstantiator;
 import com.vaadin.flow.di.Instantiator;
 import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.server.ServiceException;
 import com.vaadin.flow.server.SessionExpiredException;
 import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinResponse;
 import com.vaadin.flow.server.VaadinSession;
 import com.vaadin.flow.server.WrappedSession;
 
@@ -29,12 +38,90 @@ public class VaadinPortletServiceTest {
     @SuppressWarnings({ "rawtypes", "serial" })
     public void instantiate_defaultErrorHandlerIsAddedToNewSession()
             throws SessionExpiredException {
+        VaadinPortletService service = createService(new ReentrantLock());
+        VaadinPortletRequest request = Mockito.mock(VaadinPortletRequest.class);
+        WrappedPortletSession wrappedSession = Mockito
+                .mock(WrappedPortletSession.class);
+        Mockito.when(request.getWrappedSession(Mockito.anyBoolean()))
+                .thenReturn(wrappedSession);
+        Mockito.when(request.getWrappedSession()).thenReturn(wrappedSession);
+
+        VaadinSession session = service.findVaadinSession(request);
+        session.lock();
+        try {
+            Assert.assertNotNull(session.getErrorHandler());
+            Assert.assertTrue(session
+                    .getErrorHandler() instanceof DefaultPortletErrorHandler);
+        } finally {
+            session.unlock();
+        }
+    }
+
+    @Test
+    public void renderRequest_sessionLockedByOtherThread_renderNotBlocked()
+            throws Exception {
+        VaadinPortletService service = createService(new ReentrantLock());
+        VaadinPortletRequest request = Mockito.mock(VaadinPortletRequest.class);
+        WrappedPortletSession wrappedSession = Mockito
+                .mock(WrappedPortletSession.class);
+        Mockito.when(request.getWrappedSession(Mockito.anyBoolean()))
+                .thenReturn(wrappedSession);
+        Mockito.when(request.getWrappedSession()).thenReturn(wrappedSession);
+        Mockito.when(request.getPortletRequest())
+                .thenReturn(Mockito.mock(RenderRequest.class));
+        VaadinSession session = service.findVaadinSession(request);
+        Mockito.when(wrappedSession.getAttribute(Mockito.anyString()))
+                .thenReturn(session);
+        CountDownLatch errorReported = new CountDownLatch(1);
+        session.lock();
+        try {
+            session.setErrorHandler(event -> errorReported.countDown());
+        } finally {
+            session.unlock();
+        }
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch rendered = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> uidlRequest = executor.submit(() -> {
+                session.lock();
+                try {
+                    locked.countDown();
+                    rendered.await();
+                } finally {
+                    session.unlock();
+                }
+                return null;
+            });
+            Assert.assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+            // the mocked portlet has no descriptor, so the bootstrap fails
+            // and the error is reported as well
+            try {
+                service.handleRequest(request,
+                        Mockito.mock(VaadinPortletResponse.class));
+                Assert.fail("The render should have failed");
+            } catch (ServiceException expected) {
+                // the render has completed while the session is locked
+            }
+            Assert.assertEquals(1, errorReported.getCount());
+
+            rendered.countDown();
+            uidlRequest.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(errorReported.await(5, TimeUnit.SECONDS));
+        } finally {
+            rendered.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "serial" })
+    private static VaadinPortletService createService(ReentrantLock lock) {
         VaadinPortlet portlet = Mockito.mock(VaadinPortlet.class);
         DeploymentConfiguration configuration = Mockito
                 .mock(DeploymentConfiguration.class);
-        ReentrantLock lock = new ReentrantLock();
-        VaadinPortletService service = new VaadinPortletService(portlet,
-                configuration) {
+        return new VaadinPortletService(portlet, configuration) {
 
             @Override
             protected Lock getSessionLock(WrappedSession wrappedSession) {
@@ -50,23 +137,13 @@ public class VaadinPortletServiceTest {
             public Instantiator getInstantiator() {
                 return new DefaultInstantiator(this);
             }
-        };
 
-        VaadinPortletRequest request = Mockito.mock(VaadinPortletRequest.class);
-        WrappedPortletSession wrappedSession = Mockito
-                .mock(WrappedPortletSession.class);
-        Mockito.when(request.getWrappedSession(Mockito.anyBoolean()))
-                .thenReturn(wrappedSession);
-        Mockito.when(request.getWrappedSession()).thenReturn(wrappedSession);
-
-        VaadinSession session = service.findVaadinSession(request);
-        session.lock();
-        try {
-            Assert.assertNotNull(session.getErrorHandler());
-            Assert.assertTrue(session
-                    .getErrorHandler() instanceof DefaultPortletErrorHandler);
-        } finally {
-            session.unlock();
-        }
+            @Override
+            public void requestStart(VaadinRequest request,
+                    VaadinResponse response) {
+                // the service isn't initialized in the test
+                setCurrentInstances(request, response);
+            }
+        };
     }
 }
@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -379,6 +380,35 @@ public class VaadinPortletTest {
                 expectedDevModeErrorMessage, stringWriter.toString().trim());
     }
 
+    @Test
+    public void getWebComponentProviderURL_headerAndRenderPhase_sameUrl() {
+        AtomicInteger createdUrls = new AtomicInteger();
+        TestVaadinPortlet portlet = new TestVaadinPortlet() {
+            @Override
+            String getWebComponentProviderURL(
+                    VaadinPortletResponse response) {
+                return "/provider.js?window=" + createdUrls.incrementAndGet();
+            }
+        };
+        Map<String, Object> attributes = new HashMap<>();
+        RenderRequest request = Mockito.mock(RenderRequest.class);
+        Mockito.when(request.getAttribute(Mockito.anyString()))
+                .thenAnswer(invocation -> attributes
+                        .get(invocation.getArguments()[0]));
+        Mockito.doAnswer(invocation -> attributes.put(
+                (String) invocation.getArguments()[0],
+                invocation.getArguments()[1])).when(request)
+                .setAttribute(Mockito.anyString(), Mockito.any());
+
+        String preloadUrl = portlet.getWebComponentProviderURL(request,
+                Mockito.mock(VaadinPortletResponse.class));
+        String scriptUrl = portlet.getWebComponentProviderURL(request,
+                Mockito.mock(VaadinPortletResponse.class));
+
+        Assert.assertEquals(preloadUrl, scriptUrl);
+        Assert.assertEquals(1, createdUrls.get());
+    }
+
     @Test
     public void getTag_tagNameDoNoContainUpperCaseLetters() {
         TestMYPortlet portlet = new TestMYPortlet();
@@ -420,14 +450,15 @@ public class VaadinPortletTest {
             };
         };
 
-        Map<String, PortletViewContext> viewContexts = new HashMap<>();
+        PortletWindowRegistry registry = new PortletWindowRegistry();
 
         Div div = new Div();
         ui.add(div);
         PortletViewContext context = new PortletViewContext(div,
                 new AtomicBoolean(true), PortletMode.UNDEFINED,
                 WindowState.UNDEFINED);
-        viewContexts.put(namespace, context);
+        registry.setViewContext("bar", namespace, context,
+                PortletViewContextLimits.create(null));
 
         AtomicReference<PortletEvent> listener = new AtomicReference<>();
         context.addEventChangeListener("foo",
@@ -438,8 +469,7 @@ public class VaadinPortletTest {
 
         session.accessSynchronously(() -> {
             session.setAttribute(
-                    TestVaadinPortlet.class.getName() + "-bar-viewContext",
-                    viewContexts);
+                    TestVaadinPortlet.class.getName() + "-windows", registry);
             Mockito.when(params.getValue("vaadin.uid"))
                     .thenReturn(getListenerUid());
         });
@@ -471,13 +501,14 @@ public class VaadinPortletTest {
     @Test
     public void initComponent_noViewContextExists_viewContextIsAddedToSession() {
         VaadinPortlet.initComponent(component);
-        String attributeName = TestVaadinPortlet.class.getName() + "-"
-                + "mywindow-viewContext";
-        Map<String, Object> map = (Map<String, Object>) session
+        String attributeName = TestVaadinPortlet.class.getName()
+                + "-windows";
+        PortletWindowRegistry registry = (PortletWindowRegistry) session
                 .getAttribute(attributeName);
-        Assert.assertNotNull(map);
-        Assert.assertTrue(map.containsKey(namespace));
-        PortletViewContext context = (PortletViewContext) map.get(namespace);
+        Assert.assertNotNull(registry);
+        PortletViewContext context = registry.getViewContext("mywindow",
+                namespace, PortletViewContextLimits.create(null));
+        Assert.assertNotNull(context);
         Assert.assertEquals(component.context, context);
     }
 